@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import org.apache.felix.hc.api.Result;
+import org.apache.felix.hc.api.ResultLog;
+
+/**
+ * Decides whether a scripted check has to be executed or its last result can be returned. After a number of
+ * consecutive unchanged OK results of an expensive script, the interval between real executions starts at the
+ * average execution time and doubles with every further unchanged OK result, up to a maximum. Any other
+ * result, a changed result or a cheap script resets to executing on every call.
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+final class AdaptiveSchedule {
+
+    /** Weight of the latest execution in the average execution time. */
+    private static final double COST_WEIGHT = 0.3;
+
+    private long maxIntervalMs;
+    private long minCostMs;
+    private int stableRuns;
+
+    private double averageCostMs = -1;
+    private int unchangedRuns;
+    private int lastFingerprint;
+    private long intervalMs;
+    private long nextExecutionAt;
+
+    AdaptiveSchedule(long maxIntervalMs, long minCostMs, int stableRuns) {
+        configure(maxIntervalMs, minCostMs, stableRuns);
+    }
+
+    synchronized void configure(long maxIntervalMs, long minCostMs, int stableRuns) {
+        this.maxIntervalMs = maxIntervalMs;
+        this.minCostMs = minCostMs;
+        this.stableRuns = Math.max(1, stableRuns);
+        this.intervalMs = Math.min(intervalMs, maxIntervalMs);
+        this.nextExecutionAt = Math.min(nextExecutionAt, System.currentTimeMillis() + intervalMs);
+    }
+
+    synchronized void reset() {
+        averageCostMs = -1;
+        unchangedRuns = 0;
+        intervalMs = 0;
+        nextExecutionAt = 0;
+    }
+
+    synchronized boolean isDue(long now) {
+        return now >= nextExecutionAt;
+    }
+
+    synchronized long getNextExecutionAt() {
+        return nextExecutionAt;
+    }
+
+    synchronized void recordExecution(Result result, long costMs, long now) {
+        averageCostMs = averageCostMs < 0 ? costMs : COST_WEIGHT * costMs + (1 - COST_WEIGHT) * averageCostMs;
+        int fingerprint = fingerprint(result);
+        if (result.getStatus() != Result.Status.OK || averageCostMs < minCostMs) {
+            unchangedRuns = 0;
+        } else {
+            unchangedRuns = unchangedRuns > 0 && fingerprint == lastFingerprint ? unchangedRuns + 1 : 1;
+        }
+        if (unchangedRuns < stableRuns) {
+            intervalMs = 0;
+        } else {
+            intervalMs = Math.min(maxIntervalMs, intervalMs == 0 ? Math.max(1, (long) averageCostMs) : intervalMs * 2);
+        }
+        lastFingerprint = fingerprint;
+        nextExecutionAt = now + intervalMs;
+    }
+
+    /** Status and messages without debug entries, which often contain timings. */
+    private static int fingerprint(Result result) {
+        int fingerprint = result.getStatus().ordinal();
+        for (ResultLog.Entry entry : result) {
+            if (!entry.isDebug()) {
+                fingerprint = 31 * fingerprint + entry.getStatus().ordinal() + 7 * String.valueOf(entry.getMessage()).hashCode();
+            }
+        }
+        return fingerprint;
+    }
+
+}
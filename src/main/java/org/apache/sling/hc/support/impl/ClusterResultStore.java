@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.felix.hc.api.Result;
+import org.apache.felix.hc.api.ResultLog;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.api.resource.ValueMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shares the result of a health check between the instances of a cluster on a shared repository. One
+ * resource per check holds a lease (owner and expiry) and the last result: the instance holding the lease
+ * executes the check and stores its result, all other instances use the stored result as long as it is
+ * not older than the configured maximum age.
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+final class ClusterResultStore {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClusterResultStore.class);
+
+    static final String PN_LEASE_OWNER = "leaseOwner";
+    static final String PN_LEASE_EXPIRES = "leaseExpires";
+    static final String PN_RESULT_OWNER = "resultOwner";
+    static final String PN_RESULT_TIMESTAMP = "resultTimestamp";
+    static final String PN_RESULT_STATUSES = "resultStatuses";
+    static final String PN_RESULT_MESSAGES = "resultMessages";
+
+    private static final String DEBUG = "DEBUG";
+    private static final Map<String, Object> NODE_PROPERTIES = Collections.<String, Object>singletonMap("jcr:primaryType", "nt:unstructured");
+
+    /** A result stored by one of the cluster instances. */
+    static final class StoredResult {
+        private final Result result;
+        private final String owner;
+        private final long timestamp;
+
+        StoredResult(Result result, String owner, long timestamp) {
+            this.result = result;
+            this.owner = owner;
+            this.timestamp = timestamp;
+        }
+
+        Result getResult() {
+            return result;
+        }
+
+        String getOwner() {
+            return owner;
+        }
+
+        long getTimestamp() {
+            return timestamp;
+        }
+    }
+
+    private final String path;
+    private final String instanceId;
+    private final long leaseMs;
+
+    ClusterResultStore(String path, String instanceId, long leaseMs) {
+        this.path = path;
+        this.instanceId = instanceId;
+        this.leaseMs = leaseMs;
+    }
+
+    String getPath() {
+        return path;
+    }
+
+    /**
+     * Acquires the lease if it is not held by another instance. A lease held by this instance is only renewed
+     * (written to the repository) once more than half of it has passed, so holding the lease does not cost a
+     * write on every execution. A commit that fails because another instance changed the lease concurrently
+     * counts as a lost election.
+     *
+     * @return true if this instance holds the lease
+     */
+    boolean tryAcquireLease(ResourceResolver resourceResolver) {
+        try {
+            Resource resource = ResourceUtil.getOrCreateResource(resourceResolver, path, NODE_PROPERTIES, null, true);
+            ModifiableValueMap properties = resource.adaptTo(ModifiableValueMap.class);
+            if (properties == null) {
+                LOG.warn("Cannot modify {}, lease not acquired", path);
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            String owner = properties.get(PN_LEASE_OWNER, String.class);
+            long expires = properties.get(PN_LEASE_EXPIRES, 0L);
+            if (owner != null && !instanceId.equals(owner) && expires > now) {
+                return false;
+            }
+            if (instanceId.equals(owner) && expires - now > leaseMs / 2) {
+                return true;
+            }
+            properties.put(PN_LEASE_OWNER, instanceId);
+            properties.put(PN_LEASE_EXPIRES, now + leaseMs);
+            resourceResolver.commit();
+            if (!instanceId.equals(owner)) {
+                LOG.info("Acquired lease {} (previous owner {})", path, owner);
+            }
+            return true;
+        } catch (PersistenceException e) {
+            // another instance acquired or renewed the lease concurrently
+            resourceResolver.revert();
+            LOG.debug("Could not acquire lease {}: {}", path, e.toString());
+            return false;
+        }
+    }
+
+    /** Releases the lease if held by this instance, so another instance can take over without waiting for its expiry. */
+    void releaseLease(ResourceResolver resourceResolver) {
+        Resource resource = resourceResolver.getResource(path);
+        ModifiableValueMap properties = resource != null ? resource.adaptTo(ModifiableValueMap.class) : null;
+        if (properties == null || !instanceId.equals(properties.get(PN_LEASE_OWNER, String.class))) {
+            return;
+        }
+        try {
+            properties.put(PN_LEASE_EXPIRES, 0L);
+            resourceResolver.commit();
+        } catch (PersistenceException e) {
+            resourceResolver.revert();
+            LOG.debug("Could not release lease {}: {}", path, e.toString());
+        }
+    }
+
+    /** Stores the result with the current time, exceptions of result entries are not stored. */
+    void write(ResourceResolver resourceResolver, Result result) throws PersistenceException {
+        Resource resource = ResourceUtil.getOrCreateResource(resourceResolver, path, NODE_PROPERTIES, null, false);
+        ModifiableValueMap properties = resource.adaptTo(ModifiableValueMap.class);
+        if (properties == null) {
+            throw new PersistenceException("Cannot modify " + path);
+        }
+        List<String> statuses = new ArrayList<>();
+        List<String> messages = new ArrayList<>();
+        for (ResultLog.Entry entry : result) {
+            statuses.add(entry.isDebug() ? DEBUG : entry.getStatus().name());
+            messages.add(entry.getMessage() != null ? entry.getMessage() : "");
+        }
+        properties.put(PN_RESULT_OWNER, instanceId);
+        properties.put(PN_RESULT_TIMESTAMP, System.currentTimeMillis());
+        properties.put(PN_RESULT_STATUSES, statuses.toArray(new String[0]));
+        properties.put(PN_RESULT_MESSAGES, messages.toArray(new String[0]));
+        resourceResolver.commit();
+    }
+
+    /**
+     * @return the stored result or null if no result was stored yet
+     */
+    StoredResult read(ResourceResolver resourceResolver) {
+        Resource resource = resourceResolver.getResource(path);
+        if (resource == null) {
+            return null;
+        }
+        ValueMap properties = resource.getValueMap();
+        long timestamp = properties.get(PN_RESULT_TIMESTAMP, 0L);
+        String[] statuses = properties.get(PN_RESULT_STATUSES, String[].class);
+        String[] messages = properties.get(PN_RESULT_MESSAGES, String[].class);
+        if (timestamp <= 0 || statuses == null || messages == null || statuses.length != messages.length) {
+            return null;
+        }
+        ResultLog log = new ResultLog();
+        for (int i = 0; i < statuses.length; i++) {
+            if (DEBUG.equals(statuses[i])) {
+                log.add(new ResultLog.Entry(messages[i], true));
+            } else {
+                try {
+                    log.add(new ResultLog.Entry(Result.Status.valueOf(statuses[i]), messages[i]));
+                } catch (IllegalArgumentException e) {
+                    log.add(new ResultLog.Entry(Result.Status.HEALTH_CHECK_ERROR, "Unknown status " + statuses[i] + ": " + messages[i]));
+                }
+            }
+        }
+        return new StoredResult(new Result(log), properties.get(PN_RESULT_OWNER, String.class), timestamp);
+    }
+
+}
@@ -32,6 +32,7 @@ import org.apache.sling.jcr.api.SlingRepository;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
@@ -69,7 +70,7 @@ public class DefaultLoginsHealthCheck implements HealthCheck {
         String webconsole_configurationFactory_nameHint() default "Default Logins Check (deprecated): {logins}"; // NOSONAR
     }
 
-    private List<String> logins;
+    private volatile List<String> logins;
 
     @Reference
     private SlingRepository repository;
@@ -81,6 +82,12 @@ public class DefaultLoginsHealthCheck implements HealthCheck {
         LOG.warn("This is deprecated. Please use the component from the org.apache.sling.auth.core bundle instead.");
     }
 
+    @Modified
+    protected void modified(Config config) {
+        this.logins = Arrays.asList(config.logins());
+        LOG.info("Modified, logins={}", logins);
+    }
+
     @Override
     public Result execute() {
         FormattingResultLog resultLog = new FormattingResultLog();
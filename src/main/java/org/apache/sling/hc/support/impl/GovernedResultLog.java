@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+import org.apache.felix.hc.api.Result;
+import org.apache.felix.hc.api.ResultLog;
+
+/**
+ * Result log of scripted checks, available to scripts as binding 'log', that keeps results small: identical
+ * messages are collapsed into one entry with an "xN" counter, long messages are truncated, entries beyond
+ * the maximum count are summarized in one entry with their worst status, and debug entries are neither
+ * formatted nor kept unless enabled.
+ *
+ * Distinct entries (and one entry per escalation of the status of omitted entries above OK) are also added to the
+ * underlying {@link ResultLog}, so a script returning <code>new Result(log)</code> gets the distinct entries and
+ * the correct status, only the "xN" counters and the final summary are added by {@link #toResult()}. As the
+ * underlying log cannot be cleared, a new instance is used per execution.
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class GovernedResultLog extends FormattingResultLog {
+
+    private final int maxEntries;
+    private final int maxMessageLength;
+    private final boolean debugEnabled;
+
+    private final Map<String, CountedEntry> entries = new LinkedHashMap<>();
+    /** entries added to the underlying log, to recognize them in a result created from this log */
+    private final Set<Entry> forwarded = Collections.newSetFromMap(new IdentityHashMap<Entry, Boolean>());
+    private int omittedEntries;
+    private Result.Status omittedStatus;
+
+    /**
+     * @param maxEntries maximum number of distinct entries, 0 or less for no limit
+     * @param maxMessageLength maximum length of a message, 0 or less for no limit
+     * @param debugEnabled whether debug entries are kept
+     */
+    public GovernedResultLog(int maxEntries, int maxMessageLength, boolean debugEnabled) {
+        this.maxEntries = maxEntries;
+        this.maxMessageLength = maxMessageLength;
+        this.debugEnabled = debugEnabled;
+    }
+
+    public boolean isDebugEnabled() {
+        return debugEnabled;
+    }
+
+    @Override
+    public void debug(String format, Object... args) {
+        if (isDebugEnabled()) {
+            super.debug(format, args);
+        }
+    }
+
+    @Override
+    public synchronized ResultLog add(Entry entry) {
+        if (entry.isDebug() && !debugEnabled) {
+            return this;
+        }
+        String message = entry.getMessage() != null ? entry.getMessage() : "";
+        if (maxMessageLength > 0 && message.length() > maxMessageLength) {
+            message = message.substring(0, maxMessageLength) + "... (" + (message.length() - maxMessageLength) + " characters truncated)";
+            entry = entry.isDebug() ? new Entry(message, true, entry.getException()) : new Entry(entry.getStatus(), message, entry.getException());
+        }
+        String key = (entry.isDebug() ? "DEBUG" : entry.getStatus().name()) + '\u0000' + message;
+        CountedEntry counted = entries.get(key);
+        if (counted != null) {
+            counted.count++;
+        } else if (maxEntries > 0 && entries.size() >= maxEntries) {
+            omittedEntries++;
+            if (!entry.isDebug() && (omittedStatus == null || entry.getStatus().ordinal() > omittedStatus.ordinal())) {
+                omittedStatus = entry.getStatus();
+                if (omittedStatus != Result.Status.OK) {
+                    forward(new Entry(omittedStatus, "Further entries omitted (limit of " + maxEntries + " distinct entries reached)"));
+                }
+            }
+        } else {
+            entries.put(key, new CountedEntry(entry));
+            forward(entry);
+        }
+        return this;
+    }
+
+    private void forward(Entry entry) {
+        super.add(entry);
+        forwarded.add(entry);
+    }
+
+    /**
+     * Adds the entries of a result returned by a script, except the entries that are in this log already
+     * because the result was created from it with <code>new Result(log)</code>.
+     */
+    synchronized void addAll(Result result) {
+        for (Entry entry : result) {
+            if (!forwarded.contains(entry)) {
+                add(entry);
+            }
+        }
+    }
+
+    /** Creates the result with collapsed counters and a summary of omitted entries. */
+    public synchronized Result toResult() {
+        ResultLog log = new ResultLog();
+        for (CountedEntry counted : entries.values()) {
+            Entry entry = counted.entry;
+            if (counted.count > 1) {
+                String message = entry.getMessage() + " (x" + counted.count + ")";
+                entry = entry.isDebug() ? new Entry(message, true, entry.getException()) : new Entry(entry.getStatus(), message, entry.getException());
+            }
+            log.add(entry);
+        }
+        if (omittedEntries > 0) {
+            String message = omittedEntries + " further entries omitted (limit of " + maxEntries + " distinct entries reached)";
+            log.add(omittedStatus != null ? new Entry(omittedStatus, message) : new Entry(message, true));
+        }
+        return new Result(log);
+    }
+
+    @Override
+    public Iterator<Entry> iterator() {
+        return toResult().iterator();
+    }
+
+    @Override
+    public Result.Status getAggregateStatus() {
+        return toResult().getStatus();
+    }
+
+    @Override
+    public String toString() {
+        return toResult().toString();
+    }
+
+    private static final class CountedEntry {
+        private final Entry entry;
+        private int count = 1;
+
+        CountedEntry(Entry entry) {
+            this.entry = entry;
+        }
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.apache.commons.lang3.StringUtils;
+import org.graalvm.polyglot.Context;
+import org.graalvm.polyglot.Engine;
+import org.graalvm.polyglot.HostAccess;
+import org.graalvm.polyglot.PolyglotException;
+import org.graalvm.polyglot.Source;
+import org.graalvm.polyglot.Value;
+
+/**
+ * JSR-223 adapter for GraalJS. All instances share one polyglot {@link Engine}, so parsed {@link Source}s
+ * and compiled code are reused across executions, while each evaluation gets a new, cheap {@link Context}
+ * that exposes the engine scope bindings of the given script context.
+ *
+ * Only loaded if the org.graalvm.polyglot package is available, see {@link PolyglotScriptEngineProvider}.
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+final class GraalJsScriptEngine extends AbstractScriptEngine {
+
+    static final String LANGUAGE_ID = "js";
+
+    private static final int MAX_CACHED_SOURCES = 256;
+
+    /** The engine and sources shared by all script engine instances. */
+    static final class Shared implements AutoCloseable {
+
+        // without a JIT compiler (i.e. not on GraalVM) the engine would print a warning to stderr on creation
+        private final Engine engine = Engine.newBuilder().option("engine.WarnInterpreterOnly", "false").build();
+
+        private final Map<String, Source> sources = new LinkedHashMap<String, Source>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Source> eldest) {
+                return size() > MAX_CACHED_SOURCES;
+            }
+        };
+
+        boolean isJavaScriptAvailable() {
+            return engine.getLanguages().containsKey(LANGUAGE_ID);
+        }
+
+        synchronized Source getSource(String script) {
+            Source source = sources.get(script);
+            if (source == null) {
+                source = Source.newBuilder(LANGUAGE_ID, script, "healthcheck-" + Integer.toHexString(script.hashCode()) + ".js").cached(true).buildLiteral();
+                sources.put(script, source);
+            }
+            return source;
+        }
+
+        @Override
+        public void close() {
+            engine.close();
+        }
+    }
+
+    private final Shared shared;
+
+    GraalJsScriptEngine(Shared shared) {
+        this.shared = shared;
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext scriptContext) throws ScriptException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        try (Context context = Context.newBuilder(LANGUAGE_ID)
+                .engine(shared.engine)
+                .allowHostAccess(HostAccess.ALL)
+                .allowHostClassLookup(className -> true)
+                .out(out)
+                .err(err)
+                .build()) {
+            Value bindings = context.getBindings(LANGUAGE_ID);
+            for (Map.Entry<String, Object> binding : scriptContext.getBindings(ScriptContext.ENGINE_SCOPE).entrySet()) {
+                bindings.putMember(binding.getKey(), binding.getValue());
+            }
+            return toJava(context.eval(shared.getSource(script)));
+        } catch (PolyglotException e) {
+            ScriptException scriptException = new ScriptException(e.getMessage(), e.getSourceLocation() != null ? e.getSourceLocation().getSource().getName() : null,
+                    e.getSourceLocation() != null ? e.getSourceLocation().getStartLine() : -1);
+            scriptException.initCause(e);
+            throw scriptException;
+        } finally {
+            write(out, scriptContext.getWriter());
+            write(err, scriptContext.getErrorWriter());
+        }
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        try {
+            StringBuilder script = new StringBuilder();
+            char[] buffer = new char[8192];
+            int length;
+            while ((length = reader.read(buffer)) != -1) {
+                script.append(buffer, 0, length);
+            }
+            return eval(script.toString(), context);
+        } catch (IOException e) {
+            throw new ScriptException(e);
+        }
+    }
+
+    /** Values must be converted while the context is open, polyglot values are not accessible afterwards. */
+    private static Object toJava(Value value) {
+        if (value.isNull()) {
+            return null;
+        } else if (value.isHostObject()) {
+            return value.asHostObject();
+        } else if (value.isString()) {
+            return value.asString();
+        } else if (value.isBoolean()) {
+            return value.asBoolean();
+        } else if (value.isNumber()) {
+            return value.fitsInLong() ? (Object) value.asLong() : (Object) value.asDouble();
+        }
+        return value.toString();
+    }
+
+    private static void write(ByteArrayOutputStream output, Writer writer) {
+        if (output.size() > 0 && writer != null) {
+            try {
+                writer.write(new String(output.toByteArray(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                // writers of the script context are in-memory writers
+            }
+        }
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "GraalJS " + StringUtils.defaultString(shared.engine.getVersion());
+    }
+
+}
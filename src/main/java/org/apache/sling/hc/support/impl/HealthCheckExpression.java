@@ -0,0 +1,395 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.AttributeNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.osgi.framework.BundleContext;
+
+/**
+ * Minimal assertion language for one-line health checks that do not need a JSR-223 script engine
+ * (language 'expression'). The expression is parsed once into an evaluation tree, e.g.
+ * <pre>
+ * service('org.apache.sling.api.resource.ResourceResolverFactory') &amp;&amp; resource('/content')
+ * jmx('java.lang:type=Threading', 'ThreadCount') &lt; 500
+ * </pre>
+ * Supported are the functions service(className), resource(path) and jmx(objectName, attribute),
+ * number, string and boolean literals, the comparison operators &lt; &lt;= &gt; &gt;= == != and the
+ * boolean operators ! &amp;&amp; || as well as parentheses. Object names are parsed once as well, each jmx() call
+ * reads only its attribute with a single {@link MBeanServer#getAttribute(ObjectName, String)} call.
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+final class HealthCheckExpression {
+
+    /** Values available while evaluating an expression. */
+    static final class Context {
+        private final BundleContext bundleContext;
+        private final ResourceResolver resourceResolver;
+        private final FormattingResultLog log;
+
+        Context(BundleContext bundleContext, ResourceResolver resourceResolver, FormattingResultLog log) {
+            this.bundleContext = bundleContext;
+            this.resourceResolver = resourceResolver;
+            this.log = log;
+        }
+    }
+
+    private interface Node {
+        Object evaluate(Context context) throws JMException;
+    }
+
+    private final String text;
+    private final Node root;
+    private final boolean usesResources;
+
+    private HealthCheckExpression(String text, Node root, boolean usesResources) {
+        this.text = text;
+        this.root = root;
+        this.usesResources = usesResources;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the expression is invalid
+     */
+    static HealthCheckExpression parse(String text) {
+        Parser parser = new Parser(text);
+        Node root = parser.parseOr();
+        if (parser.peek() != null) {
+            throw parser.error("Unexpected token '" + parser.peek() + "'");
+        }
+        return new HealthCheckExpression(text, root, parser.usesResources);
+    }
+
+    boolean usesResources() {
+        return usesResources;
+    }
+
+    /**
+     * Evaluates the expression and logs its outcome, a false expression results in a CRITICAL entry.
+     */
+    void evaluate(Context context) throws JMException {
+        Object value = root.evaluate(context);
+        if (!(value instanceof Boolean)) {
+            context.log.healthCheckError("Expression does not evaluate to a boolean but to {}: {}", value, text);
+        } else if ((Boolean) value) {
+            context.log.info("Expression is true: {}", text);
+        } else {
+            context.log.critical("Expression is false: {}", text);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    private static int compare(Object left, Object right) {
+        if (left instanceof Number && right instanceof Number) {
+            return Double.compare(((Number) left).doubleValue(), ((Number) right).doubleValue());
+        }
+        if (left == null || right == null) {
+            throw new IllegalArgumentException("Cannot compare " + left + " with " + right);
+        }
+        return String.valueOf(left).compareTo(String.valueOf(right));
+    }
+
+    private static boolean isEqual(Object left, Object right) {
+        if (left instanceof Number && right instanceof Number) {
+            return ((Number) left).doubleValue() == ((Number) right).doubleValue();
+        }
+        return left == null ? right == null : String.valueOf(left).equals(String.valueOf(right));
+    }
+
+    /** Reads the attribute, for names with a dot the key of a composite attribute is tried first, e.g. 'HeapMemoryUsage.used'. */
+    private static Object getAttribute(MBeanServer mbeanServer, ObjectName objectName, String attribute, String compositeAttribute, String compositeKey)
+            throws JMException {
+        if (compositeAttribute != null) {
+            try {
+                Object value = mbeanServer.getAttribute(objectName, compositeAttribute);
+                if (value instanceof CompositeData && ((CompositeData) value).containsKey(compositeKey)) {
+                    return ((CompositeData) value).get(compositeKey);
+                }
+            } catch (AttributeNotFoundException e) {
+                // attribute name containing a dot
+            }
+        }
+        return mbeanServer.getAttribute(objectName, attribute);
+    }
+
+    private static boolean toBoolean(Object value, String operator) {
+        if (!(value instanceof Boolean)) {
+            throw new IllegalArgumentException("Operator " + operator + " requires boolean operands, got " + value);
+        }
+        return (Boolean) value;
+    }
+
+    /** Recursive descent parser, the tokens are strings, numbers, identifiers and operators. */
+    private static final class Parser {
+
+        private final String text;
+        private final List<Object> tokens = new ArrayList<>();
+        private final List<Integer> positions = new ArrayList<>();
+        private int index;
+        private boolean usesResources;
+
+        Parser(String text) {
+            this.text = text;
+            tokenize();
+        }
+
+        Object peek() {
+            return index < tokens.size() ? tokens.get(index) : null;
+        }
+
+        IllegalArgumentException error(String message) {
+            int position = index < positions.size() ? positions.get(index) : text.length();
+            return new IllegalArgumentException(message + " at position " + position + " of expression: " + text);
+        }
+
+        private boolean accept(String operator) {
+            if (operator.equals(peek())) {
+                index++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String operator) {
+            if (!accept(operator)) {
+                throw error("Expected '" + operator + "'");
+            }
+        }
+
+        Node parseOr() {
+            Node left = parseAnd();
+            while (accept("||")) {
+                Node l = left;
+                Node r = parseAnd();
+                left = c -> toBoolean(l.evaluate(c), "||") || toBoolean(r.evaluate(c), "||");
+            }
+            return left;
+        }
+
+        private Node parseAnd() {
+            Node left = parseUnary();
+            while (accept("&&")) {
+                Node l = left;
+                Node r = parseUnary();
+                left = c -> toBoolean(l.evaluate(c), "&&") && toBoolean(r.evaluate(c), "&&");
+            }
+            return left;
+        }
+
+        private Node parseUnary() {
+            if (accept("!")) {
+                Node operand = parseUnary();
+                return c -> !toBoolean(operand.evaluate(c), "!");
+            }
+            return parseComparison();
+        }
+
+        private Node parseComparison() {
+            Node left = parseOperand();
+            Object operator = peek();
+            if ("<".equals(operator) || "<=".equals(operator) || ">".equals(operator) || ">=".equals(operator)
+                    || "==".equals(operator) || "!=".equals(operator)) {
+                index++;
+                Node right = parseOperand();
+                switch ((String) operator) {
+                    case "<":
+                        return c -> compare(left.evaluate(c), right.evaluate(c)) < 0;
+                    case "<=":
+                        return c -> compare(left.evaluate(c), right.evaluate(c)) <= 0;
+                    case ">":
+                        return c -> compare(left.evaluate(c), right.evaluate(c)) > 0;
+                    case ">=":
+                        return c -> compare(left.evaluate(c), right.evaluate(c)) >= 0;
+                    case "==":
+                        return c -> isEqual(left.evaluate(c), right.evaluate(c));
+                    default:
+                        return c -> !isEqual(left.evaluate(c), right.evaluate(c));
+                }
+            }
+            return left;
+        }
+
+        private Node parseOperand() {
+            Object token = peek();
+            if (token == null) {
+                throw error("Unexpected end");
+            }
+            index++;
+            if ("(".equals(token)) {
+                Node inner = parseOr();
+                expect(")");
+                return inner;
+            }
+            if (token instanceof Literal) {
+                Object value = ((Literal) token).value;
+                return c -> value;
+            }
+            if (token instanceof Identifier) {
+                return parseFunction(((Identifier) token).name);
+            }
+            index--;
+            throw error("Unexpected token '" + token + "'");
+        }
+
+        private Node parseFunction(String name) {
+            switch (name) {
+                case "true":
+                    return c -> Boolean.TRUE;
+                case "false":
+                    return c -> Boolean.FALSE;
+                case "service": {
+                    String className = parseStringArguments(1)[0];
+                    return c -> c.bundleContext.getServiceReference(className) != null;
+                }
+                case "resource": {
+                    String path = parseStringArguments(1)[0];
+                    usesResources = true;
+                    return c -> c.resourceResolver.getResource(path) != null;
+                }
+                case "jmx": {
+                    String[] arguments = parseStringArguments(2);
+                    ObjectName objectName;
+                    try {
+                        objectName = new ObjectName(arguments[0]);
+                    } catch (MalformedObjectNameException e) {
+                        throw error("Invalid object name '" + arguments[0] + "' (" + e.getMessage() + ")");
+                    }
+                    String attribute = arguments[1];
+                    int dot = attribute.indexOf('.');
+                    String compositeAttribute = dot > 0 ? attribute.substring(0, dot) : null;
+                    String compositeKey = dot > 0 ? attribute.substring(dot + 1) : null;
+                    return c -> {
+                        Object value = getAttribute(ManagementFactory.getPlatformMBeanServer(), objectName, attribute, compositeAttribute, compositeKey);
+                        c.log.debug("jmx('{}', '{}') = {}", arguments[0], attribute, value);
+                        return value;
+                    };
+                }
+                default:
+                    index--;
+                    throw error("Unknown function '" + name + "'");
+            }
+        }
+
+        private String[] parseStringArguments(int count) {
+            expect("(");
+            String[] arguments = new String[count];
+            for (int i = 0; i < count; i++) {
+                if (i > 0) {
+                    expect(",");
+                }
+                Object token = peek();
+                if (!(token instanceof Literal) || !(((Literal) token).value instanceof String)) {
+                    throw error("Expected string argument");
+                }
+                arguments[i] = (String) ((Literal) token).value;
+                index++;
+            }
+            expect(")");
+            return arguments;
+        }
+
+        private void tokenize() {
+            int i = 0;
+            while (i < text.length()) {
+                char ch = text.charAt(i);
+                int start = i;
+                if (Character.isWhitespace(ch)) {
+                    i++;
+                    continue;
+                }
+                if (ch == '\'' || ch == '"') {
+                    int end = text.indexOf(ch, i + 1);
+                    if (end < 0) {
+                        throw new IllegalArgumentException("Unterminated string at position " + i + " of expression: " + text);
+                    }
+                    add(new Literal(text.substring(i + 1, end)), start);
+                    i = end + 1;
+                } else if (Character.isDigit(ch) || (ch == '-' && i + 1 < text.length() && Character.isDigit(text.charAt(i + 1)))) {
+                    i++;
+                    while (i < text.length() && (Character.isDigit(text.charAt(i)) || text.charAt(i) == '.')) {
+                        i++;
+                    }
+                    add(new Literal(Double.valueOf(text.substring(start, i))), start);
+                } else if (Character.isJavaIdentifierStart(ch)) {
+                    while (i < text.length() && Character.isJavaIdentifierPart(text.charAt(i))) {
+                        i++;
+                    }
+                    add(new Identifier(text.substring(start, i)), start);
+                } else if (text.startsWith("&&", i) || text.startsWith("||", i) || text.startsWith("<=", i) || text.startsWith(">=", i)
+                        || text.startsWith("==", i) || text.startsWith("!=", i)) {
+                    add(text.substring(i, i + 2), start);
+                    i += 2;
+                } else if ("()!<>,".indexOf(ch) >= 0) {
+                    add(String.valueOf(ch), start);
+                    i++;
+                } else {
+                    throw new IllegalArgumentException("Unexpected character '" + ch + "' at position " + i + " of expression: " + text);
+                }
+            }
+        }
+
+        private void add(Object token, int position) {
+            tokens.add(token);
+            positions.add(position);
+        }
+    }
+
+    private static final class Literal {
+        private final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return value instanceof String ? "'" + value + "'" : String.valueOf(value);
+        }
+    }
+
+    private static final class Identifier {
+        private final String name;
+
+        Identifier(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * JMX access for scripts, available as binding 'jmx'. Attributes are only read when requested, several attributes
+ * of an MBean can be read with one {@link MBeanServer#getAttributes(ObjectName, String[])} call. Values read are
+ * kept in a snapshot for the duration of one script execution, so reading the same attribute again (e.g. after
+ * fetching a batch with {@link #getAttributes(String, String...)}) costs no round trip. Parsed object names and
+ * pattern query results are cached across executions.
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class JmxBinding {
+
+    private static final int MAX_CACHED_NAMES = 1000;
+    private static final long QUERY_CACHE_TTL_MS = TimeUnit.SECONDS.toMillis(10);
+
+    private static final Map<String, ObjectName> OBJECT_NAMES = new ConcurrentHashMap<>();
+    private static final Map<ObjectName, CachedQuery> QUERIES = new ConcurrentHashMap<>();
+
+    private final MBeanServer mbeanServer;
+    private final Map<ObjectName, Map<String, Object>> snapshot = new HashMap<>();
+    private final Set<ObjectName> fullyLoaded = new HashSet<>();
+
+    public JmxBinding() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    JmxBinding(MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+    }
+
+    /** Discards the snapshot, so the binding can be reused for the next execution. */
+    void reset() {
+        snapshot.clear();
+        fullyLoaded.clear();
+    }
+
+    /**
+     * Returns an attribute value, only this attribute is read unless it is in the snapshot already. Values of
+     * composite attributes can be accessed with a dot, e.g. 'HeapMemoryUsage.used'.
+     */
+    public Object get(String objectName, String attribute) throws JMException {
+        ObjectName name = objectName(objectName);
+        Map<String, Object> attributes = snapshot.get(name);
+        int dot = attribute.indexOf('.');
+        String compositeAttribute = dot > 0 ? attribute.substring(0, dot) : null;
+        if (attributes == null || !attributes.containsKey(attribute) && (compositeAttribute == null || !attributes.containsKey(compositeAttribute))) {
+            // attribute names may contain dots, both are read in the same call
+            attributes = load(name, compositeAttribute == null ? new String[] { attribute } : new String[] { attribute, compositeAttribute });
+        }
+        if (attributes.get(attribute) != null || compositeAttribute == null) {
+            return attributes.get(attribute);
+        }
+        Object value = attributes.get(compositeAttribute);
+        return value instanceof CompositeData ? ((CompositeData) value).get(attribute.substring(dot + 1)) : null;
+    }
+
+    /**
+     * Returns all readable attributes of an MBean, read with a single call per script execution. This can be
+     * expensive for MBeans with large attributes (e.g. system properties or time series), prefer
+     * {@link #getAttributes(String, String...)} with the attributes needed.
+     */
+    public Map<String, Object> getAll(String objectName) throws JMException {
+        ObjectName name = objectName(objectName);
+        Map<String, Object> attributes = snapshot.get(name);
+        if (!fullyLoaded.contains(name)) {
+            attributes = load(name, attributeNames(name));
+            fullyLoaded.add(name);
+        }
+        return new LinkedHashMap<>(attributes);
+    }
+
+    /** Returns the given attributes of an MBean, read with a single call unless already in the snapshot. */
+    public Map<String, Object> getAttributes(String objectName, String... attributes) throws JMException {
+        ObjectName name = objectName(objectName);
+        Map<String, Object> loaded = snapshot.get(name);
+        List<String> missing = new ArrayList<>();
+        for (String attribute : attributes) {
+            if (loaded == null || !loaded.containsKey(attribute)) {
+                missing.add(attribute);
+            }
+        }
+        if (!missing.isEmpty()) {
+            loaded = load(name, missing.toArray(new String[missing.size()]));
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        for (String attribute : attributes) {
+            result.put(attribute, loaded.get(attribute));
+        }
+        return result;
+    }
+
+    /** Returns the names of all MBeans matching the given pattern, cached for a short time. */
+    public Set<String> query(String pattern) throws JMException {
+        Set<String> names = new TreeSet<>();
+        for (ObjectName name : queryNames(pattern)) {
+            names.add(name.getCanonicalName());
+        }
+        return names;
+    }
+
+    /** Returns the given attributes of all MBeans matching the pattern, keyed by object name. */
+    public Map<String, Map<String, Object>> queryAttributes(String pattern, String... attributes) throws JMException {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        for (ObjectName name : queryNames(pattern)) {
+            result.put(name.getCanonicalName(), attributes.length == 0 ? getAll(name.getCanonicalName()) : getAttributes(name.getCanonicalName(), attributes));
+        }
+        return result;
+    }
+
+    private Map<String, Object> load(ObjectName name, String[] attributes) throws JMException {
+        Map<String, Object> loaded = snapshot.computeIfAbsent(name, k -> new HashMap<>());
+        AttributeList values = mbeanServer.getAttributes(name, attributes);
+        for (Attribute value : values.asList()) {
+            loaded.put(value.getName(), value.getValue());
+        }
+        // attributes that could not be read are remembered as null to not read them again
+        for (String attribute : attributes) {
+            loaded.putIfAbsent(attribute, null);
+        }
+        return loaded;
+    }
+
+    /** Not cached across executions, an MBean can be registered again with different attributes. */
+    private String[] attributeNames(ObjectName name) throws JMException {
+        List<String> readable = new ArrayList<>();
+        for (MBeanAttributeInfo info : mbeanServer.getMBeanInfo(name).getAttributes()) {
+            if (info.isReadable()) {
+                readable.add(info.getName());
+            }
+        }
+        return readable.toArray(new String[readable.size()]);
+    }
+
+    private Set<ObjectName> queryNames(String pattern) throws MalformedObjectNameException {
+        ObjectName name = objectName(pattern);
+        CachedQuery query = QUERIES.get(name);
+        long now = System.currentTimeMillis();
+        if (query == null || query.expiresAt < now) {
+            query = new CachedQuery(mbeanServer.queryNames(name, null), now + QUERY_CACHE_TTL_MS);
+            putBounded(QUERIES, name, query);
+        }
+        return query.names;
+    }
+
+    static ObjectName objectName(String objectName) throws MalformedObjectNameException {
+        ObjectName name = OBJECT_NAMES.get(objectName);
+        if (name == null) {
+            name = new ObjectName(objectName);
+            putBounded(OBJECT_NAMES, objectName, name);
+        }
+        return name;
+    }
+
+    private static <K, V> void putBounded(Map<K, V> cache, K key, V value) {
+        if (cache.size() >= MAX_CACHED_NAMES) {
+            cache.clear();
+        }
+        cache.put(key, value);
+    }
+
+    private static final class CachedQuery {
+        private final Set<ObjectName> names;
+        private final long expiresAt;
+
+        CachedQuery(Set<ObjectName> names, long expiresAt) {
+            this.names = names;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.script.ScriptEngine;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Provides GraalJS script engines for JavaScript health checks if the GraalVM polyglot API
+ * (package org.graalvm.polyglot, an optional import of this bundle, e.g. exported via
+ * org.osgi.framework.system.packages.extra on GraalVM) and the 'js' language are available. The shared polyglot engine
+ * is only created when a check requests a JavaScript engine the first time, so bundles without JavaScript checks
+ * do not pay for it.
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Component(service = PolyglotScriptEngineProvider.class)
+@Deprecated
+public class PolyglotScriptEngineProvider {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PolyglotScriptEngineProvider.class);
+
+    static final Set<String> JAVASCRIPT_LANGUAGES = Collections.unmodifiableSet(new HashSet<>(Arrays.asList("ecmascript", "javascript", "js")));
+
+    private volatile GraalJsScriptEngine.Shared shared;
+    /** true once creating the shared engine was attempted, guarded by this */
+    private volatile boolean initialized;
+    private boolean active;
+
+    @Activate
+    protected synchronized void activate() {
+        active = true;
+    }
+
+    @Deactivate
+    protected synchronized void deactivate() {
+        active = false;
+        initialized = false;
+        if (shared != null) {
+            shared.close();
+            shared = null;
+        }
+    }
+
+    /**
+     * @return a GraalJS script engine for the given language or null if not available or not JavaScript
+     */
+    public ScriptEngine getScriptEngine(String language) {
+        if (!JAVASCRIPT_LANGUAGES.contains(language)) {
+            return null;
+        }
+        if (!initialized) {
+            initialize();
+        }
+        GraalJsScriptEngine.Shared current = shared;
+        return current != null ? new GraalJsScriptEngine(current) : null;
+    }
+
+    /** @return true if the shared polyglot engine was created */
+    boolean isEngineCreated() {
+        return shared != null;
+    }
+
+    private synchronized void initialize() {
+        if (initialized || !active) {
+            return;
+        }
+        initialized = true;
+        try {
+            Class.forName("org.graalvm.polyglot.Engine", false, getClass().getClassLoader());
+        } catch (ClassNotFoundException | LinkageError e) {
+            LOG.debug("GraalVM polyglot API not available, JavaScript checks use the JSR-223 engine");
+            return;
+        }
+        try {
+            GraalJsScriptEngine.Shared candidate = new GraalJsScriptEngine.Shared();
+            if (candidate.isJavaScriptAvailable()) {
+                shared = candidate;
+                LOG.info("Using GraalJS with a shared polyglot engine for JavaScript checks");
+            } else {
+                candidate.close();
+                LOG.debug("GraalVM polyglot API available without language 'js', JavaScript checks use the JSR-223 engine");
+            }
+        } catch (RuntimeException | LinkageError e) {
+            LOG.warn("Could not create GraalVM polyglot engine, JavaScript checks use the JSR-223 engine: {}", e.toString(), e);
+        }
+    }
+
+}
@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+
+/**
+ * Repository queries for scripts, available as binding 'query'. Results are limited to a maximum number
+ * of rows and a read timeout, and JCR-SQL2 queries fail instead of traversing the repository (unless
+ * disabled). {@link #find(String, String)} streams resources lazily, the other methods materialize
+ * small results that are cached for a short time, keyed by language, statement and limit, so identical
+ * queries of several checks are executed only once. Results cut off by the limit or the timeout are cached
+ * with that information and reported as WARN again whenever the cached result is used.
+ * <p>
+ * The read timeout is checked between rows: it stops reading a large result, but does not bound the time until
+ * the query returns its first row. The Sling query API has no bind parameters, values are part of the statement
+ * and statements with different values are cached separately.
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class QueryBinding {
+
+    static final String JCR_SQL2 = "JCR-SQL2";
+    static final String TRAVERSAL_FAIL_OPTION = " OPTION(TRAVERSAL FAIL)";
+
+    private static final int MAX_CACHED_QUERIES = 500;
+    private static final Pattern OPTION_CLAUSE = Pattern.compile("\\boption\\s*\\(", Pattern.CASE_INSENSITIVE);
+    private static final Map<String, CachedResult> CACHE = new ConcurrentHashMap<>();
+
+    private ResourceResolver resourceResolver;
+    private FormattingResultLog log;
+    private final int maxResults;
+    private final long timeoutMs;
+    private final long cacheTtlMs;
+    private final boolean failOnTraversal;
+
+    public QueryBinding(ResourceResolver resourceResolver, FormattingResultLog log, int maxResults, long timeoutMs, long cacheTtlMs, boolean failOnTraversal) {
+        this.resourceResolver = resourceResolver;
+        this.log = log;
+        this.maxResults = maxResults;
+        this.timeoutMs = timeoutMs;
+        this.cacheTtlMs = cacheTtlMs;
+        this.failOnTraversal = failOnTraversal;
+    }
+
+    /** Switches to the resource resolver and log of the next execution. */
+    void reset(ResourceResolver resourceResolver, FormattingResultLog log) {
+        this.resourceResolver = resourceResolver;
+        this.log = log;
+    }
+
+    /** Lazily iterates the resources found by the given JCR-SQL2 query. */
+    public Iterator<Resource> find(String statement) {
+        return find(statement, JCR_SQL2);
+    }
+
+    /** Lazily iterates the resources found by the given query, stopping at the result limit or read timeout. */
+    public Iterator<Resource> find(String statement, String language) {
+        return new LimitedIterator<>(resourceResolver.findResources(prepare(statement, language), language), statement);
+    }
+
+    /** Returns the paths found by the given JCR-SQL2 query (cached). */
+    public List<String> paths(String statement) {
+        return paths(statement, JCR_SQL2);
+    }
+
+    /** Returns the paths found by the given query (cached). */
+    @SuppressWarnings("unchecked")
+    public List<String> paths(String statement, String language) {
+        return (List<String>) cached("paths", statement, language, () -> {
+            List<String> paths = new ArrayList<>();
+            LimitedIterator<Resource> it = new LimitedIterator<>(resourceResolver.findResources(prepare(statement, language), language), statement);
+            while (it.hasNext()) {
+                paths.add(it.next().getPath());
+            }
+            return new QueryResult(Collections.unmodifiableList(paths), it.truncation);
+        });
+    }
+
+    /** Returns the number of results of the given JCR-SQL2 query, at most the result limit (cached, a WARN is logged if the limit is reached). */
+    public int count(String statement) {
+        return count(statement, JCR_SQL2);
+    }
+
+    /** Returns the number of results of the given query, at most the result limit (cached, a WARN is logged if the limit is reached). */
+    public int count(String statement, String language) {
+        return paths(statement, language).size();
+    }
+
+    /** Returns the rows of the given JCR-SQL2 query with their column values (cached). */
+    public List<Map<String, Object>> rows(String statement) {
+        return rows(statement, JCR_SQL2);
+    }
+
+    /** Returns the rows of the given query with their column values (cached). */
+    @SuppressWarnings("unchecked")
+    public List<Map<String, Object>> rows(String statement, String language) {
+        return (List<Map<String, Object>>) cached("rows", statement, language, () -> {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            LimitedIterator<Map<String, Object>> it = new LimitedIterator<>(resourceResolver.queryResources(prepare(statement, language), language), statement);
+            while (it.hasNext()) {
+                rows.add(Collections.unmodifiableMap(new LinkedHashMap<>(it.next())));
+            }
+            return new QueryResult(Collections.unmodifiableList(rows), it.truncation);
+        });
+    }
+
+    String prepare(String statement, String language) {
+        if (failOnTraversal && JCR_SQL2.equalsIgnoreCase(language) && !OPTION_CLAUSE.matcher(statement).find()) {
+            return statement + TRAVERSAL_FAIL_OPTION;
+        }
+        return statement;
+    }
+
+    private Object cached(String type, String statement, String language, Supplier<QueryResult> query) {
+        if (cacheTtlMs <= 0) {
+            return query.get().value;
+        }
+        String key = type + "|" + language + "|" + maxResults + "|" + failOnTraversal + "|" + statement;
+        long now = System.currentTimeMillis();
+        CachedResult cached = CACHE.get(key);
+        if (cached != null && cached.expiresAt > now) {
+            log.debug("Using cached result of query {}", statement);
+            if (cached.result.truncation != null) {
+                log.warn("{} (cached result)", cached.result.truncation);
+            }
+            return cached.result.value;
+        }
+        QueryResult value = query.get();
+        if (CACHE.size() >= MAX_CACHED_QUERIES) {
+            CACHE.values().removeIf(c -> c.expiresAt <= now);
+            if (CACHE.size() >= MAX_CACHED_QUERIES) {
+                CACHE.clear();
+            }
+        }
+        CACHE.put(key, new CachedResult(value, now + cacheTtlMs));
+        return value.value;
+    }
+
+    static void clearCache() {
+        CACHE.clear();
+    }
+
+    private final class LimitedIterator<T> implements Iterator<T> {
+
+        private final Iterator<T> delegate;
+        private final String statement;
+        private final long deadline;
+        private int count;
+        private boolean stopped;
+        /** true if the delegate has a next element that was not consumed yet */
+        private boolean nextAvailable;
+        /** why the iteration stopped before the end of the results, null if not (yet) stopped */
+        private String truncation;
+
+        LimitedIterator(Iterator<T> delegate, String statement) {
+            this.delegate = delegate;
+            this.statement = statement;
+            this.deadline = timeoutMs > 0 ? System.currentTimeMillis() + timeoutMs : Long.MAX_VALUE;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextAvailable) {
+                return true;
+            }
+            if (stopped) {
+                return false;
+            }
+            // limits are checked first, so no row beyond the limit is fetched
+            if (maxResults > 0 && count >= maxResults) {
+                return stop("Query result limited to " + maxResults + " results: " + statement);
+            }
+            if (System.currentTimeMillis() > deadline) {
+                return stop("Query read timeout of " + timeoutMs + "ms reached after " + count + " results: " + statement);
+            }
+            if (!delegate.hasNext()) {
+                stopped = true;
+                return false;
+            }
+            nextAvailable = true;
+            return true;
+        }
+
+        private boolean stop(String reason) {
+            stopped = true;
+            truncation = reason;
+            log.warn("{}", reason);
+            return false;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            nextAvailable = false;
+            count++;
+            return delegate.next();
+        }
+    }
+
+    private static final class QueryResult {
+        private final Object value;
+        private final String truncation;
+
+        QueryResult(Object value, String truncation) {
+            this.value = value;
+            this.truncation = truncation;
+        }
+    }
+
+    private static final class CachedResult {
+        private final QueryResult result;
+        private final long expiresAt;
+
+        CachedResult(QueryResult result, long expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
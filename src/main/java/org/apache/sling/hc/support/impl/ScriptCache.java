@@ -0,0 +1,393 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded, thread-safe key/value store with TTLs, available to scripts as binding 'cache'. One instance
+ * lives as long as its health check, so scripts can keep checkpoints between executions. Entries with values
+ * of simple types (strings and other char sequences, numbers, booleans, characters, dates and lists, sets and
+ * maps of them) can optionally be persisted to a file to survive restarts. The file is written and read entry by
+ * entry without Java serialization, so an entry that cannot be stored or restored is skipped without affecting
+ * the others.
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class ScriptCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScriptCache.class);
+
+    private static final int FILE_MAGIC = 0x53484343;
+    private static final int FILE_VERSION = 1;
+
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BOOLEAN = 2;
+    private static final byte TYPE_CHARACTER = 3;
+    private static final byte TYPE_BYTE = 4;
+    private static final byte TYPE_SHORT = 5;
+    private static final byte TYPE_INTEGER = 6;
+    private static final byte TYPE_LONG = 7;
+    private static final byte TYPE_FLOAT = 8;
+    private static final byte TYPE_DOUBLE = 9;
+    private static final byte TYPE_BIG_INTEGER = 10;
+    private static final byte TYPE_BIG_DECIMAL = 11;
+    private static final byte TYPE_DATE = 12;
+    private static final byte TYPE_LIST = 13;
+    private static final byte TYPE_SET = 14;
+    private static final byte TYPE_MAP = 15;
+    private static final byte TYPE_NULL = 16;
+
+    private int maxEntries;
+    private long defaultTtlMs;
+    private final Map<String, CacheEntry> entries;
+
+    public ScriptCache(int maxEntries, long defaultTtlMs) {
+        this.maxEntries = maxEntries;
+        this.defaultTtlMs = defaultTtlMs;
+        this.entries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > ScriptCache.this.maxEntries;
+            }
+        };
+    }
+
+    /** Applies new limits, keeping the entries that still fit (most recently used first). */
+    synchronized void reconfigure(int maxEntries, long defaultTtlMs) {
+        this.maxEntries = maxEntries;
+        this.defaultTtlMs = defaultTtlMs;
+        Iterator<String> keys = entries.keySet().iterator();
+        while (entries.size() > maxEntries && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    public synchronized Object get(String key) {
+        CacheEntry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            entries.remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    public synchronized Object get(String key, Object defaultValue) {
+        Object value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public synchronized boolean containsKey(String key) {
+        return get(key) != null;
+    }
+
+    /** Puts a value with the configured default TTL. */
+    public synchronized Object put(String key, Object value) {
+        return put(key, value, defaultTtlMs);
+    }
+
+    /** Puts a value that expires after ttlMs, a TTL of 0 or less never expires. */
+    public synchronized Object put(String key, Object value, long ttlMs) {
+        Object previous = get(key);
+        if (value == null) {
+            entries.remove(key);
+        } else {
+            entries.put(key, new CacheEntry(value, ttlMs > 0 ? System.currentTimeMillis() + ttlMs : 0));
+        }
+        return previous;
+    }
+
+    public synchronized Object computeIfAbsent(String key, Function<String, Object> mappingFunction) {
+        Object value = get(key);
+        if (value == null) {
+            value = mappingFunction.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    public synchronized Object remove(String key) {
+        Object previous = get(key);
+        entries.remove(key);
+        return previous;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        purgeExpired();
+        return entries.size();
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<CacheEntry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().isExpired(now)) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Writes all non-expired entries with values of supported types to the given file. The entries are written to
+     * a temporary file first that replaces the given file once complete, so a failure leaves the previous copy intact.
+     */
+    public synchronized void persist(File file) {
+        purgeExpired();
+        file.getParentFile().mkdirs();
+        File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        int written = 0;
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmpFile.toPath())))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                ByteArrayOutputStream value = new ByteArrayOutputStream();
+                for (Map.Entry<String, CacheEntry> entry : entries.entrySet()) {
+                    value.reset();
+                    try {
+                        writeValue(new DataOutputStream(value), entry.getValue().value);
+                    } catch (IllegalArgumentException e) {
+                        LOG.debug("Not persisting cache entry {}: {}", entry.getKey(), e.getMessage());
+                        continue;
+                    }
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(entry.getValue().expiresAt);
+                    out.writeInt(value.size());
+                    value.writeTo(out);
+                    written++;
+                }
+            }
+            try {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            LOG.debug("Persisted {} of {} cache entries to {}", written, entries.size(), file);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not persist script cache to {}: {}", file, e.toString(), e);
+            tmpFile.delete();
+        }
+    }
+
+    /** Loads entries previously written with {@link #persist(File)}, if the file exists. Entries that cannot be read are skipped. */
+    public synchronized void load(File file) {
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                LOG.warn("Ignoring script cache file {} of unknown format", file);
+                return;
+            }
+            while (true) {
+                String key;
+                try {
+                    key = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                long expiresAt = in.readLong();
+                byte[] value = new byte[in.readInt()];
+                in.readFully(value);
+                try {
+                    entries.put(key, new CacheEntry(readValue(new DataInputStream(new ByteArrayInputStream(value))), expiresAt));
+                } catch (IOException | IllegalArgumentException e) {
+                    LOG.warn("Skipping unreadable entry {} of script cache {}: {}", key, file, e.toString());
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not load script cache from {}: {}", file, e.toString(), e);
+        }
+        purgeExpired();
+    }
+
+    /** @throws IllegalArgumentException if the value or one of its elements is of an unsupported type */
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof CharSequence) {
+            // also converts Groovy GStrings
+            out.writeByte(TYPE_STRING);
+            writeString(out, value.toString());
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Character) {
+            out.writeByte(TYPE_CHARACTER);
+            out.writeChar((Character) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(TYPE_BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            out.writeByte(TYPE_SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(TYPE_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof BigInteger) {
+            out.writeByte(TYPE_BIG_INTEGER);
+            writeString(out, value.toString());
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(TYPE_BIG_DECIMAL);
+            writeString(out, value.toString());
+        } else if (value instanceof Date) {
+            out.writeByte(TYPE_DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof List || value instanceof Set) {
+            Collection<?> collection = (Collection<?>) value;
+            out.writeByte(value instanceof List ? TYPE_LIST : TYPE_SET);
+            out.writeInt(collection.size());
+            for (Object element : collection) {
+                writeValue(out, element);
+            }
+        } else if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            out.writeByte(TYPE_MAP);
+            out.writeInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeValue(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        } else {
+            throw new IllegalArgumentException("unsupported type " + value.getClass().getName());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+        case TYPE_NULL:
+            return null;
+        case TYPE_STRING:
+            return readString(in);
+        case TYPE_BOOLEAN:
+            return in.readBoolean();
+        case TYPE_CHARACTER:
+            return in.readChar();
+        case TYPE_BYTE:
+            return in.readByte();
+        case TYPE_SHORT:
+            return in.readShort();
+        case TYPE_INTEGER:
+            return in.readInt();
+        case TYPE_LONG:
+            return in.readLong();
+        case TYPE_FLOAT:
+            return in.readFloat();
+        case TYPE_DOUBLE:
+            return in.readDouble();
+        case TYPE_BIG_INTEGER:
+            return new BigInteger(readString(in));
+        case TYPE_BIG_DECIMAL:
+            return new BigDecimal(readString(in));
+        case TYPE_DATE:
+            return new Date(in.readLong());
+        case TYPE_LIST:
+        case TYPE_SET:
+            int size = in.readInt();
+            Collection<Object> collection = type == TYPE_LIST ? new ArrayList<>(size) : new LinkedHashSet<>();
+            for (int i = 0; i < size; i++) {
+                collection.add(readValue(in));
+            }
+            return collection;
+        case TYPE_MAP:
+            int entryCount = in.readInt();
+            Map<Object, Object> map = new LinkedHashMap<>();
+            for (int i = 0; i < entryCount; i++) {
+                map.put(readValue(in), readValue(in));
+            }
+            return map;
+        default:
+            throw new IllegalArgumentException("unknown type " + type);
+        }
+    }
+
+    /** Strings are written as UTF-8 bytes with their length, writeUTF() is limited to 64k. */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class CacheEntry {
+        private final Object value;
+        private final long expiresAt;
+
+        CacheEntry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAt > 0 && expiresAt <= now;
+        }
+    }
+
+}
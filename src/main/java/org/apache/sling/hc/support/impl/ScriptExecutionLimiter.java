@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Global bulkhead shared by all {@link ScriptedHealthCheck} instances. Limits the number of scripts
+ * evaluated concurrently and optionally reports the system as overloaded (based on system CPU load and heap
+ * usage) so checks can shed load by returning their last known result instead of running the script.
+ * Configuration changes are applied in place, so the checks referencing the limiter are not re-registered.
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Component(service = ScriptExecutionLimiter.class, name = "org.apache.sling.hc.support.ScriptExecutionLimiter", configurationPolicy = ConfigurationPolicy.OPTIONAL)
+@Designate(ocd = ScriptExecutionLimiter.Config.class)
+@Deprecated
+public class ScriptExecutionLimiter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScriptExecutionLimiter.class);
+
+    @ObjectClassDefinition(name = "Health Check: Sling Script Execution Limits (deprecated)", description = "Limits the concurrent execution of scripted health checks "
+            + "and optionally sheds load by returning the last known result of a check (marked as degraded) while the system is under pressure.")
+    @interface Config {
+
+        @AttributeDefinition(name = "Max Concurrent Executions", description = "Maximum number of scripted health checks executed at the same time across all configurations. Use 0 or a negative value for no limit (default).")
+        int maxConcurrentExecutions() default 0;
+
+        @AttributeDefinition(name = "Acquire Timeout (ms)", description = "Maximum time to wait for a free execution slot before the check is skipped. Should be well below "
+                + "the timeout of the health check executor (2000ms by default).")
+        long acquireTimeoutMs() default 500;
+
+        @AttributeDefinition(name = "CPU Load Threshold (%)", description = "Recent system CPU load (in percent) above which scripts are not executed "
+                + "and the last known result is returned instead. Where the JVM does not provide the CPU load, the load average per available processor "
+                + "is used. Use 0 to disable.")
+        int cpuLoadThresholdPercent() default 0;
+
+        @AttributeDefinition(name = "Heap Usage Threshold (%)", description = "Heap usage (in percent of max heap) above which scripts are not executed "
+                + "and the last known result is returned instead. Use 0 to disable.")
+        int heapUsageThresholdPercent() default 0;
+    }
+
+    /** guards running and maxConcurrentExecutions, notified when a slot is released or the limit changes */
+    private final Object slots = new Object();
+    private int running;
+    private int maxConcurrentExecutions;
+    private volatile long acquireTimeoutMs;
+    private volatile int cpuLoadThresholdPercent;
+    private volatile int heapUsageThresholdPercent;
+    private volatile DoubleSupplier cpuLoadPercent = ScriptExecutionLimiter::systemCpuLoadPercent;
+
+    @Activate
+    protected void activate(Config config) {
+        configure(config);
+        LOG.info("Activated with maxConcurrentExecutions={}, acquireTimeoutMs={}, cpuLoadThresholdPercent={}, heapUsageThresholdPercent={}",
+                config.maxConcurrentExecutions(), acquireTimeoutMs, cpuLoadThresholdPercent, heapUsageThresholdPercent);
+    }
+
+    /** Executions holding a slot keep it, a lower limit only applies to new executions. */
+    @Modified
+    protected void modified(Config config) {
+        configure(config);
+        LOG.info("Modified, maxConcurrentExecutions={}, acquireTimeoutMs={}, cpuLoadThresholdPercent={}, heapUsageThresholdPercent={}",
+                config.maxConcurrentExecutions(), acquireTimeoutMs, cpuLoadThresholdPercent, heapUsageThresholdPercent);
+    }
+
+    private void configure(Config config) {
+        this.acquireTimeoutMs = config.acquireTimeoutMs();
+        this.cpuLoadThresholdPercent = config.cpuLoadThresholdPercent();
+        this.heapUsageThresholdPercent = config.heapUsageThresholdPercent();
+        synchronized (slots) {
+            this.maxConcurrentExecutions = config.maxConcurrentExecutions();
+            slots.notifyAll();
+        }
+    }
+
+    /**
+     * Waits up to the configured timeout for an execution slot. Every successful call must be
+     * followed by a call to {@link #release()}.
+     *
+     * @return true if a slot was acquired
+     */
+    public boolean tryAcquire() {
+        synchronized (slots) {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMs);
+            while (maxConcurrentExecutions > 0 && running >= maxConcurrentExecutions) {
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0) {
+                    return false;
+                }
+                try {
+                    slots.wait(remainingMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            running++;
+            return true;
+        }
+    }
+
+    public void release() {
+        synchronized (slots) {
+            running--;
+            slots.notifyAll();
+        }
+    }
+
+    public long getAcquireTimeoutMs() {
+        return acquireTimeoutMs;
+    }
+
+    /**
+     * @return a human readable reason if the system is considered overloaded, null otherwise
+     */
+    public String getOverloadReason() {
+        if (cpuLoadThresholdPercent > 0) {
+            double load = cpuLoadPercent.getAsDouble();
+            if (load >= 0 && (int) load > cpuLoadThresholdPercent) {
+                return "CPU load " + (int) load + "% is above threshold of " + cpuLoadThresholdPercent + "%";
+            }
+        }
+        if (heapUsageThresholdPercent > 0) {
+            MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            if (heap.getMax() > 0) {
+                int heapUsagePercent = (int) (heap.getUsed() * 100 / heap.getMax());
+                if (heapUsagePercent > heapUsageThresholdPercent) {
+                    return "Heap usage " + heapUsagePercent + "% is above threshold of " + heapUsageThresholdPercent + "%";
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the recent CPU load of the system in percent from com.sun.management.OperatingSystemMXBean (an optional
+     * import of this bundle), otherwise the load average per available processor in percent, or -1 if neither is available
+     */
+    @SuppressWarnings("deprecation") // getSystemCpuLoad() is the only variant available on Java 8
+    static double systemCpuLoadPercent() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        try {
+            if (os instanceof com.sun.management.OperatingSystemMXBean) {
+                double load = ((com.sun.management.OperatingSystemMXBean) os).getSystemCpuLoad();
+                if (load >= 0) {
+                    return load * 100;
+                }
+            }
+        } catch (LinkageError e) {
+            // com.sun.management is not available
+        }
+        double loadAverage = os.getSystemLoadAverage();
+        return loadAverage >= 0 ? loadAverage * 100 / os.getAvailableProcessors() : -1;
+    }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import javax.script.SimpleScriptContext;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Modified;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.metatype.annotations.AttributeDefinition;
+import org.osgi.service.metatype.annotations.Designate;
+import org.osgi.service.metatype.annotations.ObjectClassDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Library scripts shared by all {@link ScriptedHealthCheck} instances. Each library is loaded and evaluated once with
+ * the engine for its file extension, the value of its last expression (e.g. <code>this</code> in Groovy or a map of
+ * closures) is exposed to every check in the same language as <code>lib.&lt;name&gt;</code>, name being the file name
+ * without extension. Sources are checked for changes at most once per interval, only changed libraries are evaluated
+ * again. Libraries that cannot be loaded are reported once on the log of this component, checks run without them.
+ * Checks running on GraalJS do not get libraries, a polyglot value cannot be used outside of the context it was
+ * created in.
+ * <p>
+ * The value of a library is shared by all checks of its language, which may run concurrently. Libraries must
+ * therefore be stateless and thread-safe, e.g. define functions only and keep no mutable state between calls.
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Component(service = ScriptLibraries.class, name = "org.apache.sling.hc.support.ScriptLibraries", configurationPolicy = ConfigurationPolicy.OPTIONAL)
+@Designate(ocd = ScriptLibraries.Config.class)
+@Deprecated
+public class ScriptLibraries {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScriptLibraries.class);
+
+    static final Libraries NONE = new Libraries(Collections.<String, Object>emptyMap());
+
+    @ObjectClassDefinition(name = "Health Check: Sling Script Libraries (deprecated)", description = "Library scripts with helper functions shared by all scripted health checks, "
+            + "available to the scripts as binding 'lib'.")
+    @interface Config {
+
+        @AttributeDefinition(name = "Libraries", description = "file: or jcr: URLs of library scripts, e.g. jcr:/apps/healthchecks/lib/jmxhelpers.groovy. The script engine is chosen by "
+                + "file extension, the value of the last expression of the library (e.g. 'this' in Groovy) is available to all checks in the same language as lib.<file name without extension>. "
+                + "Libraries are shared by concurrently running checks and must be stateless and thread-safe (define functions only, keep no mutable state). "
+                + "Not supported for JavaScript checks running on GraalJS (see 'Use GraalJS' of the scripted health check), disable GraalJS for checks using libraries.")
+        String[] libraries() default {};
+
+        @AttributeDefinition(name = "Check Interval (s)", description = "Minimum time between checks of the library sources for changes. Changed libraries are evaluated again.")
+        long checkIntervalSeconds() default 10;
+    }
+
+    /** The libraries available to a check, libraries that could not be loaded are left out. */
+    public static final class Libraries {
+        private final Map<String, Object> bindings;
+
+        Libraries(Map<String, Object> bindings) {
+            this.bindings = bindings;
+        }
+
+        /** @return library values by name, exposed as binding 'lib' */
+        public Map<String, Object> getBindings() {
+            return bindings;
+        }
+    }
+
+    private static final class Library {
+        private final String url;
+        private final String name;
+        private final String extension;
+        private long length = -1;
+        private long hash;
+        private String version;
+        private Object value;
+        private String error;
+
+        Library(String url) {
+            this.url = url;
+            String fileName = StringUtils.substringAfterLast(url, "/");
+            this.name = StringUtils.substringBeforeLast(fileName, ".");
+            this.extension = StringUtils.substringAfterLast(fileName, ".");
+        }
+    }
+
+    @Reference
+    private ScriptEngineManager scriptEngineManager;
+
+    @Reference
+    private ResourceResolverFactory resourceResolverFactory;
+
+    private volatile List<Library> libraries = Collections.emptyList();
+    private volatile long checkIntervalMs;
+    private volatile long nextCheckAt;
+    private volatile boolean graalJsWarningLogged;
+
+    /** libraries by language name of the requesting engine, cleared whenever a library changes */
+    private final Map<String, Libraries> librariesByLanguage = new ConcurrentHashMap<>();
+
+    @Activate
+    protected void activate(Config config) {
+        configure(config);
+        LOG.info("Activated with libraries={}, checkIntervalSeconds={}", config.libraries(), config.checkIntervalSeconds());
+    }
+
+    @Modified
+    protected void modified(Config config) {
+        configure(config);
+        LOG.info("Modified, libraries={}, checkIntervalSeconds={}", config.libraries(), config.checkIntervalSeconds());
+    }
+
+    private void configure(Config config) {
+        List<Library> configured = new ArrayList<>();
+        for (String url : config.libraries()) {
+            if (StringUtils.isNotBlank(url)) {
+                configured.add(new Library(url.trim()));
+            }
+        }
+        synchronized (this) {
+            this.libraries = configured;
+            this.checkIntervalMs = TimeUnit.SECONDS.toMillis(config.checkIntervalSeconds());
+            this.nextCheckAt = 0;
+            this.graalJsWarningLogged = false;
+            librariesByLanguage.clear();
+        }
+    }
+
+    /**
+     * @return the libraries for the language of the given engine, loading or reloading changed libraries first if the
+     * check interval has passed
+     */
+    public Libraries get(ScriptEngine scriptEngine) {
+        if (libraries.isEmpty()) {
+            return NONE;
+        }
+        if (scriptEngine instanceof GraalJsScriptEngine) {
+            warnNotAvailableOnGraalJs();
+            return NONE;
+        }
+        ScriptEngineFactory factory = scriptEngine.getFactory();
+        if (factory == null || factory.getExtensions() == null) {
+            return NONE;
+        }
+        if (System.currentTimeMillis() >= nextCheckAt) {
+            refresh();
+        }
+        Libraries result = librariesByLanguage.get(factory.getLanguageName());
+        return result != null ? result : collect(factory.getLanguageName(), factory.getExtensions());
+    }
+
+    /** Values of polyglot contexts cannot be used after the evaluation, so JavaScript libraries are not available on GraalJS. */
+    private void warnNotAvailableOnGraalJs() {
+        if (graalJsWarningLogged) {
+            return;
+        }
+        List<String> javaScriptLibraries = new ArrayList<>();
+        for (Library library : libraries) {
+            if (PolyglotScriptEngineProvider.JAVASCRIPT_LANGUAGES.contains(library.extension)) {
+                javaScriptLibraries.add(library.url);
+            }
+        }
+        if (!javaScriptLibraries.isEmpty()) {
+            LOG.warn("Script libraries {} are not available to checks running on GraalJS, disable 'Use GraalJS' for checks using them", javaScriptLibraries);
+        }
+        graalJsWarningLogged = true;
+    }
+
+    private synchronized Libraries collect(String language, List<String> extensions) {
+        Map<String, Object> bindings = new LinkedHashMap<>();
+        for (Library library : libraries) {
+            if (extensions.contains(library.extension) && library.error == null) {
+                bindings.put(library.name, library.value);
+            }
+        }
+        Libraries result = new Libraries(Collections.unmodifiableMap(bindings));
+        librariesByLanguage.put(language, result);
+        return result;
+    }
+
+    private synchronized void refresh() {
+        if (System.currentTimeMillis() < nextCheckAt) {
+            // refreshed by another thread meanwhile
+            return;
+        }
+        boolean changed = false;
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(null)) {
+            for (Library library : libraries) {
+                changed |= load(library, resourceResolver);
+            }
+        } catch (LoginException e) {
+            LOG.warn("Could not get resource resolver to check script libraries: {}", e.toString());
+        }
+        if (changed) {
+            librariesByLanguage.clear();
+        }
+        nextCheckAt = System.currentTimeMillis() + checkIntervalMs;
+    }
+
+    /**
+     * Evaluates the library if its source changed since it was evaluated last, a library that could not be loaded
+     * is tried again. The source is only read if its version (last modification) changed or is not known.
+     *
+     * @return true if the value or availability of the library changed
+     */
+    private boolean load(Library library, ResourceResolver resourceResolver) {
+        try {
+            String version = ScriptedHealthCheck.sourceVersion(library.url, resourceResolver);
+            if (version != null && version.equals(library.version) && library.error == null) {
+                return false;
+            }
+            try (ScriptReader source = ScriptedHealthCheck.openScript(library.url, resourceResolver)) {
+                source.drain();
+                if (source.getLength() == library.length && source.getHash() == library.hash && library.error == null) {
+                    library.version = version;
+                    return false;
+                }
+            }
+            ScriptEngine scriptEngine = scriptEngineManager.getEngineByExtension(library.extension);
+            if (scriptEngine == null) {
+                throw new IllegalStateException("No script engine for extension '" + library.extension + "'");
+            }
+            ScriptContext context = new SimpleScriptContext();
+            Bindings bindings = new SimpleBindings();
+            context.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+            try (ScriptReader source = ScriptedHealthCheck.openScript(library.url, resourceResolver)) {
+                library.value = scriptEngine instanceof Compilable ? ((Compilable) scriptEngine).compile(source).eval(context)
+                        : scriptEngine.eval(source, context);
+                source.drain();
+                library.length = source.getLength();
+                library.hash = source.getHash();
+            }
+            library.version = version;
+            library.error = null;
+            LOG.info("Loaded script library {} from {}", library.name, library.url);
+        } catch (ScriptException | IOException | RuntimeException e) {
+            // reported once until the library is loaded again, the checks run without it
+            boolean wasAvailable = library.error == null && library.length >= 0;
+            if (library.error == null) {
+                LOG.warn("Could not load script library {}: {}", library.url, e.toString());
+            }
+            library.error = e.toString();
+            library.value = null;
+            return wasAvailable;
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import org.apache.sling.commons.metrics.MetricsService;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Reference;
+
+/**
+ * Publishes measurements of script executions as histograms of the Sling Commons Metrics service. The package
+ * org.apache.sling.commons.metrics is an optional import: this component is only activated (and its class only
+ * loaded) if a {@link MetricsService} is available, {@link ScriptedHealthCheck} references it optionally and never
+ * refers to the metrics API itself.
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Component(service = ScriptMetrics.class)
+@Deprecated
+public class ScriptMetrics {
+
+    @Reference
+    private MetricsService metricsService;
+
+    public void update(String histogram, long value) {
+        metricsService.histogram(histogram).update(value);
+    }
+
+}
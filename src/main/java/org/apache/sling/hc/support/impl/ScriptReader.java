@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import java.io.BufferedReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Reader of a script source (decoded as UTF-8) that counts the lines and computes a 64 bit FNV-1a hash of the
+ * characters while they are read, e.g. by {@link javax.script.Compilable#compile(Reader)}. Line count and hash
+ * are therefore available after a single pass without keeping a copy of the script.
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+final class ScriptReader extends FilterReader {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private long hash = FNV_OFFSET_BASIS;
+    private long length;
+    private int lines = 1;
+    private int pendingLineBreaks;
+
+    ScriptReader(Reader in) {
+        super(in);
+    }
+
+    static ScriptReader open(InputStream in) {
+        return new ScriptReader(new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE));
+    }
+
+    static ScriptReader open(Path file) throws IOException {
+        return new ScriptReader(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public int read() throws IOException {
+        int c = super.read();
+        if (c >= 0) {
+            update((char) c);
+        }
+        return c;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int count) throws IOException {
+        int read = super.read(buffer, offset, count);
+        for (int i = offset; i < offset + read; i++) {
+            update(buffer[i]);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        // skipped characters are part of the hash as well
+        char[] buffer = new char[(int) Math.min(count, BUFFER_SIZE)];
+        long skipped = 0;
+        int read;
+        while (skipped < count && (read = read(buffer, 0, (int) Math.min(count - skipped, buffer.length))) != -1) {
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark() not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset() not supported");
+    }
+
+    /** Reads the remaining characters (only counting and hashing them), e.g. after an engine stopped reading early. */
+    ScriptReader drain() throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        while (read(buffer, 0, buffer.length) != -1) {
+            // only counted and hashed
+        }
+        return this;
+    }
+
+    /** Reads the remaining characters into a string. */
+    String readFully() throws IOException {
+        StringBuilder text = new StringBuilder(BUFFER_SIZE);
+        char[] buffer = new char[BUFFER_SIZE];
+        int read;
+        while ((read = read(buffer, 0, buffer.length)) != -1) {
+            text.append(buffer, 0, read);
+        }
+        return text.toString();
+    }
+
+    /** Number of lines read so far, trailing line breaks are not counted (same as {@link ScriptedHealthCheck#countLines(String)}). */
+    int getLineCount() {
+        return lines;
+    }
+
+    long getHash() {
+        return hash;
+    }
+
+    /** Number of characters read so far. */
+    long getLength() {
+        return length;
+    }
+
+    private void update(char c) {
+        hash = (hash ^ c) * FNV_PRIME;
+        length++;
+        if (c == '\n') {
+            pendingLineBreaks++;
+        } else {
+            lines += pendingLineBreaks;
+            pendingLineBreaks = 0;
+        }
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+
+/**
+ * Measures the CPU time and the allocated bytes of the current thread between {@link #start()} and {@link #stop()}.
+ * Values are -1 if the JVM does not support the respective measurement (allocation counters require
+ * com.sun.management.ThreadMXBean which is an optional import of this bundle).
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+final class ScriptResourceUsage {
+
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    private static final boolean CPU_TIME_SUPPORTED = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported() && THREAD_MX_BEAN.isThreadCpuTimeEnabled();
+
+    private static final boolean ALLOCATION_SUPPORTED = isAllocationSupported();
+
+    private long startCpuTime;
+    private long startAllocatedBytes;
+    private long cpuTimeNanos = -1;
+    private long allocatedBytes = -1;
+
+    private static boolean isAllocationSupported() {
+        try {
+            return THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).isThreadAllocatedMemorySupported()
+                    && ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).isThreadAllocatedMemoryEnabled();
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+
+    static long currentThreadCpuTime() {
+        return CPU_TIME_SUPPORTED ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : -1;
+    }
+
+    static long currentThreadAllocatedBytes() {
+        return ALLOCATION_SUPPORTED ? ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId()) : -1;
+    }
+
+    void start() {
+        startCpuTime = currentThreadCpuTime();
+        startAllocatedBytes = currentThreadAllocatedBytes();
+    }
+
+    void stop() {
+        cpuTimeNanos = startCpuTime >= 0 ? currentThreadCpuTime() - startCpuTime : -1;
+        allocatedBytes = startAllocatedBytes >= 0 ? currentThreadAllocatedBytes() - startAllocatedBytes : -1;
+    }
+
+    long getCpuTimeNanos() {
+        return cpuTimeNanos;
+    }
+
+    long getCpuTimeMs() {
+        return cpuTimeNanos >= 0 ? cpuTimeNanos / 1000000 : -1;
+    }
+
+    long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "cpu time: " + (cpuTimeNanos >= 0 ? FormattingResultLog.msHumanReadable(getCpuTimeMs()) : "n/a")
+                + ", allocated: " + (allocatedBytes >= 0 ? FormattingResultLog.bytesHumanReadable(allocatedBytes) : "n/a");
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.felix.hc.api.FormattingResultLog;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Loads scripts from http(s): and bundle: URLs. Remote scripts are fetched conditionally (If-None-Match and
+ * If-Modified-Since) and kept in memory and as a local copy in the bundle data area, which is used when
+ * the remote server cannot be reached. Bundle scripts use the syntax bundle:symbolicName/path/in/bundle.jar
+ * and are re-read only when the bundle was modified.
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+class ScriptUrlLoader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScriptUrlLoader.class);
+
+    static final String BUNDLE_URL_PREFIX = "bundle:";
+
+    private static final String CACHE_DIR = "scripted-hc-scripts";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+
+    private final BundleContext bundleContext;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final Map<String, CachedScript> scripts = new ConcurrentHashMap<>();
+
+    ScriptUrlLoader(BundleContext bundleContext, int connectTimeoutMs, int readTimeoutMs) {
+        this.bundleContext = bundleContext;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    static boolean isSupported(String url) {
+        return url.startsWith("http:") || url.startsWith("https:") || url.startsWith(BUNDLE_URL_PREFIX);
+    }
+
+    String load(String url, FormattingResultLog log) {
+        if (url.startsWith(BUNDLE_URL_PREFIX)) {
+            return loadFromBundle(url);
+        }
+        return loadFromRemote(url, log);
+    }
+
+    private String loadFromRemote(String url, FormattingResultLog log) {
+        CachedScript cached = scripts.computeIfAbsent(url, this::readLocalCopy);
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setConnectTimeout(connectTimeoutMs);
+            connection.setReadTimeout(readTimeoutMs);
+            connection.setUseCaches(false);
+            if (cached.content != null) {
+                if (cached.etag != null) {
+                    connection.setRequestProperty("If-None-Match", cached.etag);
+                }
+                if (cached.lastModified > 0) {
+                    connection.setIfModifiedSince(cached.lastModified);
+                }
+            }
+            try {
+                int status = connection.getResponseCode();
+                if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached.content != null) {
+                    log.debug("Script {} not modified", url);
+                    return cached.content;
+                }
+                if (status != HttpURLConnection.HTTP_OK) {
+                    throw new IOException("Unexpected response status " + status);
+                }
+                String content;
+                try (InputStream is = connection.getInputStream()) {
+                    content = read(is);
+                }
+                CachedScript fetched = new CachedScript(content, connection.getHeaderField("ETag"), connection.getLastModified());
+                scripts.put(url, fetched);
+                writeLocalCopy(url, fetched);
+                return content;
+            } finally {
+                connection.disconnect();
+            }
+        } catch (IOException e) {
+            if (cached.content == null) {
+                throw new IllegalArgumentException("Could not read script URL " + url + ": " + e, e);
+            }
+            LOG.warn("Could not fetch script {}, using last good copy: {}", url, e.toString());
+            log.info("Could not fetch script {}, using last good copy: {}", url, e);
+            return cached.content;
+        }
+    }
+
+    private String loadFromBundle(String url) {
+        String location = StringUtils.substringAfter(url, BUNDLE_URL_PREFIX);
+        String symbolicName = StringUtils.substringBefore(location, "/");
+        String path = StringUtils.substringAfter(location, symbolicName);
+        Bundle bundle = null;
+        for (Bundle candidate : bundleContext.getBundles()) {
+            if (symbolicName.equals(candidate.getSymbolicName()) && (bundle == null || candidate.getVersion().compareTo(bundle.getVersion()) > 0)) {
+                bundle = candidate;
+            }
+        }
+        if (bundle == null) {
+            throw new IllegalArgumentException("Could not read script URL " + url + ": bundle " + symbolicName + " not found");
+        }
+        CachedScript cached = scripts.get(url);
+        if (cached != null && cached.lastModified == bundle.getLastModified()) {
+            return cached.content;
+        }
+        URL entry = bundle.getEntry(path);
+        if (entry == null) {
+            throw new IllegalArgumentException("Could not read script URL " + url + ": no entry " + path + " in bundle " + symbolicName);
+        }
+        try (InputStream is = entry.openStream()) {
+            String content = read(is);
+            scripts.put(url, new CachedScript(content, null, bundle.getLastModified()));
+            return content;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read script URL " + url + ": " + e, e);
+        }
+    }
+
+    private CachedScript readLocalCopy(String url) {
+        File file = localCopy(url);
+        File metadataFile = localCopyMetadata(url);
+        if (file != null && file.isFile() && metadataFile.isFile()) {
+            try (InputStream is = new FileInputStream(file); InputStream metadataIs = new FileInputStream(metadataFile)) {
+                Properties metadata = new Properties();
+                metadata.load(metadataIs);
+                return new CachedScript(read(is), metadata.getProperty(ETAG), Long.parseLong(metadata.getProperty(LAST_MODIFIED, "0")));
+            } catch (IOException | NumberFormatException e) {
+                LOG.warn("Could not read local copy of script {}: {}", url, e.toString());
+            }
+        }
+        return new CachedScript(null, null, 0);
+    }
+
+    private void writeLocalCopy(String url, CachedScript script) {
+        File file = localCopy(url);
+        if (file == null) {
+            return;
+        }
+        file.getParentFile().mkdirs();
+        Properties metadata = new Properties();
+        if (script.etag != null) {
+            metadata.setProperty(ETAG, script.etag);
+        }
+        metadata.setProperty(LAST_MODIFIED, String.valueOf(script.lastModified));
+        try (OutputStream os = new FileOutputStream(file); OutputStream metadataOs = new FileOutputStream(localCopyMetadata(url))) {
+            os.write(script.content.getBytes(StandardCharsets.UTF_8));
+            metadata.store(metadataOs, url);
+        } catch (IOException e) {
+            LOG.warn("Could not write local copy of script {}: {}", url, e.toString());
+        }
+    }
+
+    private File localCopy(String url) {
+        return bundleContext != null ? bundleContext.getDataFile(CACHE_DIR + "/" + url.replaceAll("[^A-Za-z0-9._-]", "_")) : null;
+    }
+
+    private File localCopyMetadata(String url) {
+        return new File(localCopy(url).getPath() + ".properties");
+    }
+
+    private static String read(InputStream is) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int length;
+        while ((length = is.read(buffer)) != -1) {
+            result.write(buffer, 0, length);
+        }
+        return result.toString(StandardCharsets.UTF_8.name());
+    }
+
+    private static final class CachedScript {
+        private final String content;
+        private final String etag;
+        private final long lastModified;
+
+        CachedScript(String content, String etag, long lastModified) {
+            this.content = content;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+}
@@ -17,26 +17,43 @@
  */
 package org.apache.sling.hc.support.impl;
 
-import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.io.StringWriter;
+import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Array;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import javax.jcr.Session;
 import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
 import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineFactory;
@@ -51,16 +68,22 @@ import org.apache.felix.hc.api.HealthCheck;
 import org.apache.felix.hc.api.Result;
 import org.apache.felix.hc.api.ResultLog;
 import org.apache.sling.api.resource.LoginException;
+import org.apache.sling.api.resource.PersistenceException;
 import org.apache.sling.api.resource.Resource;
 import org.apache.sling.api.resource.ResourceResolver;
 import org.apache.sling.api.resource.ResourceResolverFactory;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
 import org.osgi.framework.InvalidSyntaxException;
 import org.osgi.framework.ServiceReference;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.ConfigurationPolicy;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Modified;
 import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
 import org.osgi.service.metatype.annotations.AttributeDefinition;
 import org.osgi.service.metatype.annotations.Designate;
 import org.osgi.service.metatype.annotations.ObjectClassDefinition;
@@ -82,17 +105,36 @@ public class ScriptedHealthCheck implements HealthCheck {
     public static final String HC_LABEL = "Health Check: Sling Script (deprecated)";
 
     public static final String JCR_FILE_URL_PREFIX = "jcr:";
+    public static final String EXPRESSION_LANGUAGE = "expression";
     private static final String JCR_CONTENT = "/jcr:content";
+    private static final String JCR_LAST_MODIFIED = "jcr:lastModified";
+    /** modifications within this time may be followed by another one with the same time stamp (and size), see {@link #sourceVersion(String, ResourceResolver)} */
+    private static final long RECENT_MODIFICATION_MS = 2000;
+    private static final String METRICS_PREFIX = "hc.scripted.";
+    private static final String CACHE_DIR = "scripted-hc-cache";
 
-    @ObjectClassDefinition(name = HC_LABEL, description = "NOTE: This Sling pendant of org.apache.felix.hc.generalchecks.ScriptedHealthCheck allows to use scriptUrls with prefix 'jcr:' and has the additional bindings 'resourceResolver' and 'session'. "
+    static final String DEFAULT_CLUSTER_RESULT_PATH = "/var/healthcheck/scripted";
+    private static final Pattern CLUSTER_KEY_PATTERN = Pattern.compile("[A-Za-z0-9._-]+");
+
+    /** cluster result paths by framework (bundle context) and path, a path is only used by one check of a framework */
+    private static final Map<List<Object>, ScriptedHealthCheck> CLUSTER_RESULT_PATHS = new ConcurrentHashMap<>();
+
+    @ObjectClassDefinition(name = HC_LABEL, description = "NOTE: This Sling pendant of org.apache.felix.hc.generalchecks.ScriptedHealthCheck allows to use scriptUrls with prefix 'jcr:' (besides 'file:', 'http(s):' and 'bundle:symbolicName/path') and has the additional bindings 'resourceResolver' and 'session'. "
             + "Runs an arbitrary script in given scriping language (via javax.script). "
-            + "The script has the following default bindings available: 'log', 'scriptHelper', 'bundleContext', 'resourceResolver' and 'session'. "
+            + "The script has the following default bindings available: 'log', 'scriptHelper', 'jmx', 'bundleContext', 'resourceResolver', 'session', 'query' and 'cache'. "
             + "'log' is an instance of org.apache.felix.hc.api.FormattingResultLog and is used to define the result of the HC. "
             + "'scriptHelper.getService(classObj)' can be used as shortcut to retrieve a service."
             + "'scriptHelper.getServices(classObj, filter)' used to retrieve multiple services for a class using given filter. "
             + "For all services retrieved via scriptHelper, unget() is called automatically at the end of the script execution."
+            + "'jmx.get(objectName, attribute)' reads a single MBean attribute, 'jmx.getAttributes(objectName, attributes...)' reads several attributes with one call, "
+            + "'jmx.getAll(objectName)' reads all attributes and 'jmx.query(pattern)' finds MBeans; values read are kept for the rest of the execution. "
+            + "'query.find(statement[, language])' lazily iterates query results, 'query.paths(...)', 'query.count(...)' and 'query.rows(...)' return "
+            + "short-time cached results, all limited in size and read time. "
+            + "'cache' is a bounded key/value store (get(key), put(key, value[, ttlMs]), remove(key)) kept between executions of this check. "
             + "'bundleContext' is available for advanced use cases. The script does not need to return any value, but if it does and it is "
-            + "a org.apache.felix.hc.api.Result, that result and entries in 'log' are combined then).")
+            + "a org.apache.felix.hc.api.Result, that result and entries in 'log' are combined then). "
+            + "With language 'expression', the script is a one-line assertion evaluated without a script engine, e.g. "
+            + "\"service('com.example.Service') && resource('/content') && jmx('java.lang:type=Threading', 'ThreadCount') < 500\".")
     @interface Config {
 
         @AttributeDefinition(name = "Name", description = "Name of this health check.")
@@ -101,24 +143,121 @@ public class ScriptedHealthCheck implements HealthCheck {
         @AttributeDefinition(name = "Tags", description = "List of tags for this health check, used to select subsets of health checks for execution e.g. by a composite health check.")
         String[] hc_tags() default {}; // NOSONAR
 
-        @AttributeDefinition(name = "Language", description = "The language the script is written in. To use e.g. 'groovy', ensure osgi bundle 'groovy-jsr223' is available.")
+        @AttributeDefinition(name = "Language", description = "The language the script is written in. To use e.g. 'groovy', ensure osgi bundle 'groovy-jsr223' is available. "
+                + "Use 'expression' for built-in one-line assertions that do not need a script engine.")
         String language() default "groovy";
 
+        @AttributeDefinition(name = "Use GraalJS", description = "If enabled and the GraalVM polyglot API with language 'js' is available, JavaScript checks "
+                + "(language 'ecmascript', 'javascript' or 'js') run on GraalJS with an engine shared by all checks instead of the JSR-223 engine. "
+                + "Scripts may need changes as host access differs, and script libraries (binding 'lib') are not available on GraalJS.")
+        boolean useGraalJs() default false;
+
         @AttributeDefinition(name = "Script", description = "The script itself (either use 'script' or 'scriptUrl').")
         String script() default "log.info('ok'); log.warn('not so good'); log.critical('bad') // minimal example";
 
         @AttributeDefinition(name = "Script Url", description = "Url to the script to be used as alternative source (either use 'script' or 'scriptUrl').")
         String scriptUrl() default "";
 
+        @AttributeDefinition(name = "Script Url Connect Timeout (ms)", description = "Connect timeout for http(s) script urls. Remote scripts are fetched conditionally "
+                + "(ETag/Last-Modified) on each execution and the last good copy is used if the server cannot be reached.")
+        int scriptUrlConnectTimeoutMs() default 5000;
+
+        @AttributeDefinition(name = "Script Url Read Timeout (ms)", description = "Read timeout for http(s) script urls.")
+        int scriptUrlReadTimeoutMs() default 10000;
+
+        @AttributeDefinition(name = "CPU Time Budget (ms)", description = "Thread CPU time a single script execution may use before the result is a WARN. Use 0 to disable.")
+        long cpuTimeBudgetMs() default 0;
+
+        @AttributeDefinition(name = "Allocation Budget (bytes)", description = "Bytes a single script execution may allocate before the result is a WARN. Use 0 to disable.")
+        long allocationBudgetBytes() default 0;
+
+        @AttributeDefinition(name = "Slow Script Threshold (ms)", description = "When a script execution takes longer than this, the stack of the executing thread is sampled "
+                + "and a summary of the top frames and script lines is added to the result and logged. Use 0 to disable.")
+        long slowScriptThresholdMs() default 0;
+
+        @AttributeDefinition(name = "Slow Script Sample Interval (ms)", description = "Interval between stack samples of a slow script.")
+        long slowScriptSampleIntervalMs() default 50;
+
+        @AttributeDefinition(name = "Query Max Results", description = "Maximum number of results read from a query of the 'query' binding. Use 0 for no limit.")
+        int queryMaxResults() default 1000;
+
+        @AttributeDefinition(name = "Query Timeout (ms)", description = "Maximum time to read results of a query of the 'query' binding, checked between rows "
+                + "(the time until the query returns its first row is not limited). Use 0 for no limit.")
+        long queryTimeoutMs() default 5000;
+
+        @AttributeDefinition(name = "Query Cache TTL (s)", description = "Time results of 'query.paths', 'query.count' and 'query.rows' are cached. Use 0 to disable caching.")
+        long queryCacheTtlSeconds() default 10;
+
+        @AttributeDefinition(name = "Query Fail On Traversal", description = "If enabled, JCR-SQL2 queries of the 'query' binding fail instead of traversing the repository (OPTION(TRAVERSAL FAIL)).")
+        boolean queryFailOnTraversal() default true;
+
+        @AttributeDefinition(name = "Cache Max Entries", description = "Maximum number of entries in the 'cache' binding, least recently used entries are evicted first.")
+        int cacheMaxEntries() default 1000;
+
+        @AttributeDefinition(name = "Cache TTL (s)", description = "Default time to live of entries in the 'cache' binding. Use 0 for entries that do not expire.")
+        long cacheTtlSeconds() default 3600;
+
+        @AttributeDefinition(name = "Persist Cache", description = "If enabled, entries of the 'cache' binding are stored in the bundle data area on deactivation and restored on activation. "
+                + "Only values of simple types are stored: strings, numbers, booleans, characters, dates and lists, sets and maps of them.")
+        boolean cachePersistent() default false;
+
+        @AttributeDefinition(name = "Log Max Entries", description = "Maximum number of distinct entries in the result, further entries are summarized "
+                + "in one entry with their worst status. Identical messages are always collapsed into one entry with an 'xN' counter. Use 0 for no limit.")
+        int logMaxEntries() default 100;
+
+        @AttributeDefinition(name = "Log Max Message Length", description = "Messages of result entries longer than this are truncated. Use 0 for no limit.")
+        int logMaxMessageLength() default 2000;
+
+        @AttributeDefinition(name = "Log Debug Entries", description = "If enabled, debug entries of 'log' are kept in the result. Otherwise they are only kept "
+                + "if debug logging is enabled for this class, and 'log.debug(...)' calls are not even formatted.")
+        boolean logDebugEntries() default false;
+
+        @AttributeDefinition(name = "Adaptive Execution", description = "If enabled, the script is not executed on every call once it returned the same OK result "
+                + "several times in a row and is expensive: the last result is returned instead and the interval between executions grows "
+                + "with every unchanged OK result, up to the maximum. Any other result resets to executing on every call.")
+        boolean adaptiveExecution() default false;
+
+        @AttributeDefinition(name = "Adaptive Max Interval (s)", description = "Maximum time between executions in adaptive mode.")
+        long adaptiveMaxIntervalSeconds() default 300;
+
+        @AttributeDefinition(name = "Adaptive Min Cost (ms)", description = "Scripts with an average execution time below this are executed on every call in adaptive mode.")
+        long adaptiveMinCostMs() default 100;
+
+        @AttributeDefinition(name = "Adaptive Stable Runs", description = "Number of consecutive unchanged OK results before the interval between executions starts to grow.")
+        int adaptiveStableRuns() default 5;
+
+        @AttributeDefinition(name = "Cluster Singleton", description = "If enabled, only the instance holding a lease in the repository executes the script "
+                + "and stores its result in the repository, the other instances of a cluster on a shared repository return the stored result. "
+                + "Useful for expensive repository-wide checks. Requires write access of the service user to the cluster result path.")
+        boolean clusterSingleton() default false;
+
+        @AttributeDefinition(name = "Cluster Result Path", description = "Repository path below which the lease and result of cluster singleton checks are stored (one resource per cluster key).")
+        String clusterResultPath() default DEFAULT_CLUSTER_RESULT_PATH;
+
+        @AttributeDefinition(name = "Cluster Key", description = "Required for cluster singleton mode: name of the resource holding the lease and result of this check "
+                + "below the cluster result path. Must be the same for this check on all instances and unique among all checks, only letters, digits, '.', '_' "
+                + "and '-' are allowed. Without a valid key or if another check uses the same key, the script is executed locally.")
+        String clusterKey() default "";
+
+        @AttributeDefinition(name = "Cluster Lease (s)", description = "Time the executing instance holds the lease, renewed by an execution once half of it has passed. Must be longer than the execution interval of the check.")
+        long clusterLeaseSeconds() default 120;
+
+        @AttributeDefinition(name = "Cluster Result Max Age (s)", description = "Stored results older than this are stale, an instance without the lease then executes the script itself.")
+        long clusterResultMaxAgeSeconds() default 300;
+
         @AttributeDefinition
         String webconsole_configurationFactory_nameHint() default "Scripted HC (deprecated): {hc.name} (tags: {hc.tags}) {scriptUrl} language: {language}"; // NOSONAR
     }
 
-    private String language;
-    private String script;
-    private String scriptUrl;
+    /** configuration snapshot, read once per execution */
+    private volatile Settings settings;
+    /** expression last loaded from the script url, parsed again only if the loaded text changes */
+    private volatile HealthCheckExpression loadedExpression;
+    private final String instanceId = UUID.randomUUID().toString();
 
     private BundleContext bundleContext;
+    /** unique per configuration, names the file of the persistent cache */
+    private String servicePid;
 
     @Reference
     private ScriptEngineManager scriptEngineManager;
@@ -128,65 +267,429 @@ public class ScriptedHealthCheck implements HealthCheck {
     @Reference
     private ResourceResolverFactory resourceResolverFactory;
 
+    @Reference
+    private ScriptExecutionLimiter executionLimiter;
+
+    @Reference
+    private SlowScriptSampler slowScriptSampler;
+
+    @Reference
+    private ScriptLibraries scriptLibraries;
+
+    @Reference
+    private PolyglotScriptEngineProvider polyglotScriptEngineProvider;
+
+    @Reference(cardinality = ReferenceCardinality.OPTIONAL, policy = ReferencePolicy.DYNAMIC)
+    private volatile ScriptMetrics scriptMetrics;
+
+    private volatile PreparedScript preparedScript;
+    private final AtomicReference<ScriptExecution> idleExecution = new AtomicReference<>();
+    private volatile Result lastResult;
+    private volatile long lastResultTime;
+    private volatile boolean holdsClusterLease;
+
     @Activate
-    protected void activate(BundleContext context, Config config) {
+    protected void activate(BundleContext context, Config config, Map<String, Object> properties) {
         this.bundleContext = context;
-        this.language = config.language().toLowerCase();
-        this.script = config.script();
-        this.scriptUrl = config.scriptUrl();
+        this.servicePid = (String) properties.get(Constants.SERVICE_PID);
+        configure(config);
+
+        LOG.info("Activated Scripted HC {} with {}", config.hc_name(), settings.describeScript());
+
+        LOG.warn("This is deprecated. Please use the use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead.");
+    }
+
+    /**
+     * Applies configuration changes without re-registering the service. The compiled script, the last result and
+     * the parsed expression are only discarded if the script source, language or engine selection changed, the
+     * 'cache' binding and the copies of remote scripts are kept.
+     */
+    @Modified
+    protected void modified(Config config) {
+        configure(config);
+        LOG.info("Modified Scripted HC {} with {}", config.hc_name(), settings.describeScript());
+    }
 
-        if (StringUtils.isNotBlank(script) && StringUtils.isNotBlank(scriptUrl)) {
-            LOG.info("Both 'script' and 'scriptUrl' (={}) are configured, ignoring 'scriptUrl'", scriptUrl);
-            scriptUrl = null;
+    private void configure(Config config) {
+        Settings previous = settings;
+        String clusterResultPath = null;
+        String clusterError = null;
+        if (config.clusterSingleton()) {
+            String clusterKey = StringUtils.trimToEmpty(config.clusterKey());
+            if (!CLUSTER_KEY_PATTERN.matcher(clusterKey).matches()) {
+                clusterError = "Cluster singleton mode requires a cluster key of letters, digits, '.', '_' and '-' (configured: '" + clusterKey + "'), executing locally";
+            } else {
+                clusterResultPath = StringUtils.defaultIfBlank(config.clusterResultPath(), DEFAULT_CLUSTER_RESULT_PATH) + "/" + clusterKey;
+                ScriptedHealthCheck holder = CLUSTER_RESULT_PATHS.putIfAbsent(clusterPathKey(clusterResultPath), this);
+                if (holder != null && holder != this) {
+                    clusterError = "Cluster key '" + clusterKey + "' is used by another check already, executing locally";
+                    clusterResultPath = null;
+                }
+            }
+            if (clusterError != null) {
+                LOG.error("Scripted HC {}: {}", config.hc_name(), clusterError);
+            }
+        }
+        Settings next = new Settings(config, previous, bundleContext, cacheFile(config), instanceId, clusterResultPath, clusterError);
+        // executions hold the query settings, they are only reused with the settings they were created with
+        this.settings = next;
+        idleExecution.set(null);
+        if (previous == null || next.scriptChanged(previous)) {
+            if (next.adaptiveSchedule != null) {
+                next.adaptiveSchedule.reset();
+            }
+            this.preparedScript = null;
+            this.lastResult = null;
+            this.loadedExpression = null;
         }
+        if (previous != null && previous.clusterResultStore != null
+                && (next.clusterResultStore == null || !next.clusterResultStore.getPath().equals(previous.clusterResultStore.getPath()))) {
+            CLUSTER_RESULT_PATHS.remove(clusterPathKey(previous.clusterResultStore.getPath()), this);
+            // the lease at the previous path would otherwise only expire
+            if (holdsClusterLease) {
+                releaseClusterLease(previous);
+            }
+        }
+    }
 
-        LOG.info("Activated Scripted HC {} with {}", config.hc_name(),
-                (StringUtils.isNotBlank(script) ? "script " + script : "script url " + scriptUrl));
+    /** @return the file of the persistent cache, named after the service PID as the check name need not be unique */
+    private File cacheFile(Config config) {
+        if (!config.cachePersistent() || bundleContext == null) {
+            return null;
+        }
+        if (StringUtils.isBlank(servicePid)) {
+            LOG.warn("Scripted HC {} has no service PID, the cache is not persisted", config.hc_name());
+            return null;
+        }
+        try {
+            return bundleContext.getDataFile(CACHE_DIR + "/" + URLEncoder.encode(servicePid, StandardCharsets.UTF_8.name()) + ".dat");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 
-        LOG.warn("This is deprecated. Please use the use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead.");
+    private List<Object> clusterPathKey(String clusterResultPath) {
+        return Arrays.<Object>asList(bundleContext, clusterResultPath);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        Settings current = settings;
+        if (current.cacheFile != null) {
+            current.cache.persist(current.cacheFile);
+        }
+        if (current.clusterResultStore != null) {
+            if (holdsClusterLease) {
+                releaseClusterLease(current);
+            }
+            CLUSTER_RESULT_PATHS.remove(clusterPathKey(current.clusterResultStore.getPath()), this);
+        }
+    }
+
+    private void releaseClusterLease(Settings current) {
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(null)) {
+            current.clusterResultStore.releaseLease(resourceResolver);
+        } catch (LoginException e) {
+            LOG.warn("Could not release cluster lease of Scripted HC {}: {}", current.hcName, e.toString());
+        }
+        holdsClusterLease = false;
     }
 
     @Override
     public Result execute() {
+        Settings current = settings;
+        if (EXPRESSION_LANGUAGE.equals(current.language)) {
+            return executeExpression(current);
+        }
+        Result previousResult = lastResult;
+        AdaptiveSchedule schedule = current.adaptiveSchedule;
+        if (schedule != null && previousResult != null && !schedule.isDue(System.currentTimeMillis())) {
+            return adaptiveResult(previousResult, schedule.getNextExecutionAt());
+        }
+        String overloadReason = executionLimiter.getOverloadReason();
+        if (overloadReason != null && previousResult != null) {
+            return degradedResult(previousResult, "Load shedding: " + overloadReason);
+        }
+        // the lease is only checked if the script would be executed now
+        if (current.clusterResultStore != null) {
+            Result clusterResult = getClusterResult(current);
+            if (clusterResult != null) {
+                return clusterResult;
+            }
+        }
+        if (!executionLimiter.tryAcquire()) {
+            String reason = "Too many concurrent script executions, no slot available within " + executionLimiter.getAcquireTimeoutMs() + "ms";
+            if (previousResult != null) {
+                return degradedResult(previousResult, reason);
+            }
+            FormattingResultLog log = new FormattingResultLog();
+            log.warn("Script not executed: {}", reason);
+            return new Result(log);
+        }
+        try {
+            long startTime = System.currentTimeMillis();
+            Result result = executeScript(current);
+            lastResult = result;
+            lastResultTime = System.currentTimeMillis();
+            if (schedule != null) {
+                schedule.recordExecution(result, lastResultTime - startTime, lastResultTime);
+            }
+            if (current.clusterResultStore != null && holdsClusterLease) {
+                storeClusterResult(current, result);
+            }
+            return result;
+        } finally {
+            executionLimiter.release();
+        }
+    }
+
+    /**
+     * @return the result stored by the cluster instance holding the lease or null if this instance holds the lease
+     * or the stored result is missing or stale, so the script has to be executed locally
+     */
+    private Result getClusterResult(Settings current) {
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(null)) {
+            holdsClusterLease = current.clusterResultStore.tryAcquireLease(resourceResolver);
+            if (holdsClusterLease) {
+                return null;
+            }
+            ClusterResultStore.StoredResult stored = current.clusterResultStore.read(resourceResolver);
+            if (stored == null || System.currentTimeMillis() - stored.getTimestamp() > current.clusterResultMaxAgeMs) {
+                LOG.debug("No current cluster result for Scripted HC {}, executing locally", current.hcName);
+                return null;
+            }
+            FormattingResultLog log = new FormattingResultLog();
+            log.info("Result of cluster instance {} from {}", stored.getOwner(), new Date(stored.getTimestamp()));
+            for (ResultLog.Entry entry : stored.getResult()) {
+                log.add(entry);
+            }
+            return new Result(log);
+        } catch (LoginException e) {
+            throw new IllegalStateException("Could not get resource resolver: " + e, e);
+        }
+    }
+
+    private void storeClusterResult(Settings current, Result result) {
+        try (ResourceResolver resourceResolver = resourceResolverFactory.getServiceResourceResolver(null)) {
+            current.clusterResultStore.write(resourceResolver, result);
+        } catch (LoginException | PersistenceException e) {
+            LOG.warn("Could not store cluster result of Scripted HC {}: {}", current.hcName, e.toString());
+        }
+    }
+
+    private Result adaptiveResult(Result previousResult, long nextExecutionAt) {
+        FormattingResultLog log = new FormattingResultLog();
+        log.debug("Adaptive execution: result unchanged since {}, next execution at {}", new Date(lastResultTime), new Date(nextExecutionAt));
+        for (ResultLog.Entry entry : previousResult) {
+            log.add(entry);
+        }
+        return new Result(log);
+    }
+
+    private Result degradedResult(Result previousResult, String reason) {
         FormattingResultLog log = new FormattingResultLog();
+        log.warn("{}, returning last known result from {} (degraded)", reason, new Date(lastResultTime));
+        for (ResultLog.Entry entry : previousResult) {
+            log.add(entry);
+        }
+        return new Result(log);
+    }
+
+    private Result executeScript(Settings current) {
+        ScriptExecution execution = idleExecution.getAndSet(null);
+        if (execution == null || execution.settings != current) {
+            execution = new ScriptExecution(current, bundleContext, scriptHelper);
+        }
+        // not reused, the script may return new Result(log) which copies the entries of the underlying log
+        GovernedResultLog log = newResultLog(current);
+        if (current.clusterError != null) {
+            log.warn(current.clusterError);
+        }
 
         ResourceResolver resourceResolver = null;
         try {
             resourceResolver = resourceResolverFactory.getServiceResourceResolver(null);
 
-            boolean urlIsUsed = StringUtils.isBlank(script);
-            String scriptToExecute;
-            if (urlIsUsed) {
-                if (scriptUrl.startsWith(JCR_FILE_URL_PREFIX)) {
-                    String jcrPath = StringUtils.substringAfter(scriptUrl, JCR_FILE_URL_PREFIX);
-                    scriptToExecute = getScriptFromRepository(resourceResolver, jcrPath);
-                } else {
-                    scriptToExecute = scriptHelper.getFileContents(scriptUrl);
-                }
-            } else {
-                scriptToExecute = script;
-            }
-
-            log.info("Executing script {} ({} lines)...", (urlIsUsed ? scriptUrl : " as configured"), scriptToExecute.split("\n").length);
+            boolean urlIsUsed = StringUtils.isBlank(current.script);
+            boolean streamed = isStreamed(current);
+            String scriptToExecute = streamed ? null : loadScript(current, resourceResolver, log);
 
             try {
-                ScriptEngine scriptEngine = getScriptEngine(language);
+                PreparedScript prepared = streamed ? prepareScript(current, resourceResolver) : prepareScript(current, scriptToExecute);
+                if (prepared.lineCount >= 0) {
+                    log.info("Executing script {} ({} lines)...", (urlIsUsed ? current.scriptUrl : " as configured"), prepared.lineCount);
+                } else {
+                    log.info("Executing script {}...", current.scriptUrl);
+                }
 
-                Map<String, Object> additionalBindings = new HashMap<>();
-                additionalBindings.put("resourceResolver", resourceResolver);
-                additionalBindings.put("session", resourceResolver.adaptTo(Session.class));
-                scriptHelper.evalScript(bundleContext, scriptEngine, scriptToExecute, log, additionalBindings, true);
+                ScriptLibraries.Libraries libraries = scriptLibraries.get(prepared.scriptEngine);
+                execution.reset(resourceResolver, log, libraries.getBindings());
+                SlowScriptSampler.Sampling sampling = current.slowScriptThresholdMs > 0
+                        ? slowScriptSampler.start(current.slowScriptThresholdMs, current.slowScriptSampleIntervalMs) : null;
+                try (ScriptReader scriptReader = prepared.isEvaluatedFromSource() ? openScript(current, resourceResolver) : null) {
+                    scriptHelper.evalScript(execution, prepared.scriptEngine, prepared.text, prepared.compiledScript, scriptReader, true);
+                } finally {
+                    if (sampling != null) {
+                        reportSlowScript(current, log, sampling.stop());
+                    }
+                    checkResourceUsage(current, log, execution.usage);
+                }
             } catch (Exception e) {
                 log.healthCheckError("Exception while executing script: " + e, e);
             }
 
-            return new Result(log);
+            return log.toResult();
         } catch (LoginException e) {
             throw new IllegalStateException("Could not get resource resolver: " + e, e);
         } finally {
             if (resourceResolver != null) {
                 resourceResolver.close();
             }
+            execution.release();
+            if (execution.settings == settings) {
+                idleExecution.set(execution);
+            }
+        }
+    }
+
+    private Result executeExpression(Settings current) {
+        GovernedResultLog log = newResultLog(current);
+        if (current.expressionError != null) {
+            log.healthCheckError("Invalid expression: {}", current.expressionError);
+            return log.toResult();
+        }
+        ResourceResolver resourceResolver = null;
+        try {
+            HealthCheckExpression expressionToEvaluate = current.expression;
+            if (expressionToEvaluate == null || expressionToEvaluate.usesResources()) {
+                resourceResolver = resourceResolverFactory.getServiceResourceResolver(null);
+            }
+            if (expressionToEvaluate == null) {
+                String text = loadScript(current, resourceResolver, log);
+                expressionToEvaluate = loadedExpression;
+                if (expressionToEvaluate == null || !text.equals(expressionToEvaluate.toString())) {
+                    expressionToEvaluate = HealthCheckExpression.parse(text);
+                    loadedExpression = expressionToEvaluate;
+                }
+            }
+            expressionToEvaluate.evaluate(new HealthCheckExpression.Context(bundleContext, resourceResolver, log));
+        } catch (LoginException e) {
+            throw new IllegalStateException("Could not get resource resolver: " + e, e);
+        } catch (Exception e) {
+            log.healthCheckError("Exception while evaluating expression: " + e, e);
+        } finally {
+            if (resourceResolver != null) {
+                resourceResolver.close();
+            }
+        }
+        return log.toResult();
+    }
+
+    private static GovernedResultLog newResultLog(Settings current) {
+        return new GovernedResultLog(current.logMaxEntries, current.logMaxMessageLength, current.logDebugEntries || LOG.isDebugEnabled());
+    }
+
+    private static String loadScript(Settings current, ResourceResolver resourceResolver, FormattingResultLog log) {
+        if (StringUtils.isNotBlank(current.script)) {
+            return current.script;
+        } else if (ScriptUrlLoader.isSupported(current.scriptUrl)) {
+            return current.scriptUrlLoader.load(current.scriptUrl, log);
+        }
+        try (ScriptReader scriptReader = openScript(current, resourceResolver)) {
+            return scriptReader.readFully();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read script " + current.scriptUrl + ": " + e, e);
+        }
+    }
+
+    /**
+     * @return true for scripts from jcr: and file: URLs, which are streamed instead of loaded into a string, false for
+     * inline scripts and scripts loaded by the {@link ScriptUrlLoader}
+     */
+    private static boolean isStreamed(Settings current) {
+        return StringUtils.isBlank(current.script) && !ScriptUrlLoader.isSupported(current.scriptUrl);
+    }
+
+    /** @return a reader for scripts from jcr: and file: URLs, or null for inline scripts and scripts loaded by the {@link ScriptUrlLoader} */
+    private static ScriptReader openScript(Settings current, ResourceResolver resourceResolver) {
+        return isStreamed(current) ? openScript(current.scriptUrl, resourceResolver) : null;
+    }
+
+    /** Opens a script from a jcr: or file: URL. */
+    static ScriptReader openScript(String url, ResourceResolver resourceResolver) {
+        if (url.startsWith(JCR_FILE_URL_PREFIX)) {
+            String jcrPath = StringUtils.substringAfter(url, JCR_FILE_URL_PREFIX);
+            Resource dataResource = resourceResolver.getResource(jcrPath + JCR_CONTENT);
+            InputStream is = dataResource != null ? dataResource.adaptTo(InputStream.class) : null;
+            if (is == null) {
+                throw new IllegalArgumentException("Could not load script from path " + jcrPath);
+            }
+            return ScriptReader.open(is);
+        }
+        try {
+            return ScriptReader.open(Paths.get(new URI(url)));
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Could not read file URL " + url + ": " + e, e);
+        }
+    }
+
+    /**
+     * Cheap change detection for a script from a jcr: or file: URL, based on its last modification (and size for files)
+     * instead of reading and hashing the source.
+     *
+     * @return a version that changes whenever the source is modified, or null if not available or modified too recently
+     * to rely on, e.g. for a file written twice within the resolution of the file system time stamps
+     */
+    static String sourceVersion(String url, ResourceResolver resourceResolver) {
+        try {
+            long lastModified;
+            String version;
+            if (url.startsWith(JCR_FILE_URL_PREFIX)) {
+                Resource dataResource = resourceResolver.getResource(StringUtils.substringAfter(url, JCR_FILE_URL_PREFIX) + JCR_CONTENT);
+                Calendar lastModifiedProperty = dataResource != null ? dataResource.getValueMap().get(JCR_LAST_MODIFIED, Calendar.class) : null;
+                if (lastModifiedProperty == null) {
+                    return null;
+                }
+                lastModified = lastModifiedProperty.getTimeInMillis();
+                version = dataResource.getPath() + "@" + lastModified;
+            } else {
+                Path file = Paths.get(new URI(url));
+                lastModified = Files.getLastModifiedTime(file).toMillis();
+                version = lastModified + "/" + Files.size(file);
+            }
+            return System.currentTimeMillis() - lastModified >= RECENT_MODIFICATION_MS ? version : null;
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            // the source is read and hashed instead, which reports the problem if it cannot be read either
+            return null;
+        }
+    }
+
+    private static void reportSlowScript(Settings current, FormattingResultLog log, String samplingSummary) {
+        if (samplingSummary != null) {
+            log.info("Script exceeded slow threshold of {}: {}", FormattingResultLog.msHumanReadable(current.slowScriptThresholdMs), samplingSummary);
+            LOG.warn("Slow script in health check {} (threshold {}ms): {}", current.hcName, current.slowScriptThresholdMs, samplingSummary);
+        }
+    }
+
+    private void checkResourceUsage(Settings current, FormattingResultLog log, ScriptResourceUsage usage) {
+        ScriptMetrics metrics = scriptMetrics;
+        if (usage.getCpuTimeNanos() >= 0) {
+            if (metrics != null) {
+                metrics.update(current.cpuTimeMetric, usage.getCpuTimeNanos());
+            }
+            if (current.cpuTimeBudgetMs > 0 && usage.getCpuTimeMs() > current.cpuTimeBudgetMs) {
+                log.warn("Script used {} of CPU time, above budget of {}", FormattingResultLog.msHumanReadable(usage.getCpuTimeMs()),
+                        FormattingResultLog.msHumanReadable(current.cpuTimeBudgetMs));
+            }
+        }
+        if (usage.getAllocatedBytes() >= 0) {
+            if (metrics != null) {
+                metrics.update(current.allocatedBytesMetric, usage.getAllocatedBytes());
+            }
+            if (current.allocationBudgetBytes > 0 && usage.getAllocatedBytes() > current.allocationBudgetBytes) {
+                log.warn("Script allocated {}, above budget of {}", FormattingResultLog.bytesHumanReadable(usage.getAllocatedBytes()),
+                        FormattingResultLog.bytesHumanReadable(current.allocationBudgetBytes));
+            }
         }
     }
 
@@ -198,7 +701,101 @@ public class ScriptedHealthCheck implements HealthCheck {
         return StringUtils.join(factoryArr, ", ");
     }
 
-    private ScriptEngine getScriptEngine(String language) {
+    /**
+     * Returns the engine and, for {@link Compilable} engines, the compiled script for the given script text. Both are kept
+     * until the text changes (or the configured script/language changes, see {@link #modified(Config)}) if the engine is
+     * safe for concurrent use, otherwise a fresh engine is used per execution.
+     */
+    private PreparedScript prepareScript(Settings current, String scriptToExecute) throws ScriptException {
+        PreparedScript prepared = preparedScript;
+        if (prepared != null && scriptToExecute.equals(prepared.text)) {
+            return prepared;
+        }
+        ScriptEngine scriptEngine = getScriptEngine(current);
+        CompiledScript compiledScript = scriptEngine instanceof Compilable ? ((Compilable) scriptEngine).compile(scriptToExecute) : null;
+        prepared = new PreparedScript(scriptToExecute, scriptEngine, compiledScript);
+        if (isThreadSafe(scriptEngine)) {
+            preparedScript = prepared;
+        }
+        return prepared;
+    }
+
+    /**
+     * Streaming variant of {@link #prepareScript(Settings, String)}. Engines that are not {@link Compilable} evaluate the
+     * source straight from a reader on each execution, so there is nothing to prepare but the engine. Compiled scripts are
+     * kept while the {@link #sourceVersion(String, ResourceResolver) source version} is unchanged, without reading the
+     * source. If it is unknown or changed, the source is only hashed to detect changes of the content, and compiled straight
+     * from the reader if it changed.
+     */
+    private PreparedScript prepareScript(Settings current, ResourceResolver resourceResolver) throws ScriptException, IOException {
+        PreparedScript prepared = preparedScript;
+        if (prepared != null && prepared.isEvaluatedFromSource()) {
+            return prepared;
+        }
+        String version = sourceVersion(current.scriptUrl, resourceResolver);
+        if (prepared != null && version != null && version.equals(prepared.version)) {
+            return prepared;
+        }
+        ScriptReader source = openScript(current, resourceResolver);
+        try {
+            if (prepared != null) {
+                if (prepared.matches(source.drain())) {
+                    if (version != null) {
+                        // touched without changing the content, the next executions can rely on the version again
+                        preparedScript = prepared.withVersion(version);
+                    }
+                    return prepared;
+                }
+                source.close();
+                source = openScript(current, resourceResolver);
+            }
+            ScriptEngine scriptEngine = getScriptEngine(current);
+            if (scriptEngine instanceof Compilable) {
+                CompiledScript compiledScript = ((Compilable) scriptEngine).compile(source);
+                prepared = new PreparedScript(version, source.drain(), scriptEngine, compiledScript);
+            } else {
+                prepared = new PreparedScript(scriptEngine);
+            }
+            if (isThreadSafe(scriptEngine)) {
+                preparedScript = prepared;
+            }
+            return prepared;
+        } finally {
+            source.close();
+        }
+    }
+
+    /** Number of lines without trailing line breaks, without splitting the script. */
+    static int countLines(String text) {
+        int end = text.length();
+        while (end > 0 && text.charAt(end - 1) == '\n') {
+            end--;
+        }
+        int lines = 1;
+        for (int i = 0; i < end; i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private static boolean isThreadSafe(ScriptEngine scriptEngine) {
+        if (scriptEngine instanceof GraalJsScriptEngine) {
+            return true;
+        }
+        ScriptEngineFactory factory = scriptEngine.getFactory();
+        return factory != null && factory.getParameter("THREADING") != null;
+    }
+
+    private ScriptEngine getScriptEngine(Settings current) {
+        String language = current.language;
+        if (current.useGraalJs) {
+            ScriptEngine polyglotEngine = polyglotScriptEngineProvider.getScriptEngine(language);
+            if (polyglotEngine != null) {
+                return polyglotEngine;
+            }
+        }
         ScriptEngine scriptEngine = scriptEngineManager.getEngineByExtension(language);
         if (scriptEngine == null) {
             try {
@@ -211,44 +808,248 @@ public class ScriptedHealthCheck implements HealthCheck {
         return scriptEngine;
     }
 
-    private String getScriptFromRepository(ResourceResolver resourceResolver, String jcrPath) {
-        String fileContent;
-        try {
-            Resource dataResource = resourceResolver.getResource(jcrPath + JCR_CONTENT);
-            if (dataResource == null) {
-                throw new IllegalArgumentException("Could not load script from path " + jcrPath);
+    /**
+     * Immutable snapshot of the configuration, published with a single volatile write by {@link #configure(Config)}
+     * and read once per execution, so an execution never sees a mix of old and new settings. The 'cache' binding,
+     * the adaptive schedule and the script url loader are taken over from the previous settings where possible.
+     */
+    private static final class Settings {
+        private final String hcName;
+        private final String cpuTimeMetric;
+        private final String allocatedBytesMetric;
+        private final String language;
+        private final String script;
+        private final boolean useGraalJs;
+        private final String scriptUrl;
+        private final int scriptUrlConnectTimeoutMs;
+        private final int scriptUrlReadTimeoutMs;
+        private final ScriptUrlLoader scriptUrlLoader;
+        private final long cpuTimeBudgetMs;
+        private final long allocationBudgetBytes;
+        private final long slowScriptThresholdMs;
+        private final long slowScriptSampleIntervalMs;
+        private final int queryMaxResults;
+        private final long queryTimeoutMs;
+        private final long queryCacheTtlMs;
+        private final boolean queryFailOnTraversal;
+        private final File cacheFile;
+        private final ScriptCache cache;
+        private final HealthCheckExpression expression;
+        private final String expressionError;
+        private final int logMaxEntries;
+        private final int logMaxMessageLength;
+        private final boolean logDebugEntries;
+        private final AdaptiveSchedule adaptiveSchedule;
+        private final ClusterResultStore clusterResultStore;
+        private final String clusterError;
+        private final long clusterResultMaxAgeMs;
+
+        Settings(Config config, Settings previous, BundleContext bundleContext, File cacheFile, String instanceId, String clusterResultPath, String clusterError) {
+            String configuredScriptUrl = config.scriptUrl();
+            if (StringUtils.isNotBlank(config.script()) && StringUtils.isNotBlank(configuredScriptUrl)) {
+                LOG.info("Both 'script' and 'scriptUrl' (={}) are configured, ignoring 'scriptUrl'", configuredScriptUrl);
+                configuredScriptUrl = null;
+            }
+            this.hcName = config.hc_name();
+            this.cpuTimeMetric = METRICS_PREFIX + hcName + ".cpuTimeNanos";
+            this.allocatedBytesMetric = METRICS_PREFIX + hcName + ".allocatedBytes";
+            this.language = config.language().toLowerCase();
+            this.script = config.script();
+            this.useGraalJs = config.useGraalJs();
+            this.scriptUrl = configuredScriptUrl;
+            this.scriptUrlConnectTimeoutMs = config.scriptUrlConnectTimeoutMs();
+            this.scriptUrlReadTimeoutMs = config.scriptUrlReadTimeoutMs();
+            this.scriptUrlLoader = previous != null && previous.scriptUrlConnectTimeoutMs == scriptUrlConnectTimeoutMs
+                    && previous.scriptUrlReadTimeoutMs == scriptUrlReadTimeoutMs
+                    ? previous.scriptUrlLoader : new ScriptUrlLoader(bundleContext, scriptUrlConnectTimeoutMs, scriptUrlReadTimeoutMs);
+            this.cpuTimeBudgetMs = config.cpuTimeBudgetMs();
+            this.allocationBudgetBytes = config.allocationBudgetBytes();
+            this.slowScriptThresholdMs = config.slowScriptThresholdMs();
+            this.slowScriptSampleIntervalMs = config.slowScriptSampleIntervalMs();
+            this.queryMaxResults = config.queryMaxResults();
+            this.queryTimeoutMs = config.queryTimeoutMs();
+            this.queryCacheTtlMs = TimeUnit.SECONDS.toMillis(config.queryCacheTtlSeconds());
+            this.queryFailOnTraversal = config.queryFailOnTraversal();
+            this.cacheFile = cacheFile;
+            if (previous == null) {
+                this.cache = new ScriptCache(config.cacheMaxEntries(), TimeUnit.SECONDS.toMillis(config.cacheTtlSeconds()));
+                if (cacheFile != null) {
+                    cache.load(cacheFile);
+                }
             } else {
-                try (InputStream is = dataResource.adaptTo(InputStream.class);
-                        ByteArrayOutputStream result = new ByteArrayOutputStream();) {
-                    byte[] buffer = new byte[1024];
-                    int length;
-                    while ((length = is.read(buffer)) != -1) {
-                        result.write(buffer, 0, length);
-                    }
-                    fileContent = result.toString(StandardCharsets.UTF_8.name());
+                this.cache = previous.cache;
+                cache.reconfigure(config.cacheMaxEntries(), TimeUnit.SECONDS.toMillis(config.cacheTtlSeconds()));
+            }
+            this.logMaxEntries = config.logMaxEntries();
+            this.logMaxMessageLength = config.logMaxMessageLength();
+            this.logDebugEntries = config.logDebugEntries();
+            // in cluster singleton mode, the stored result and the lease must be refreshed before they expire for the other instances
+            long adaptiveMaxIntervalMs = config.clusterSingleton()
+                    ? Math.min(TimeUnit.SECONDS.toMillis(config.adaptiveMaxIntervalSeconds()),
+                            Math.min(TimeUnit.SECONDS.toMillis(config.clusterResultMaxAgeSeconds()), TimeUnit.SECONDS.toMillis(config.clusterLeaseSeconds())) / 2)
+                    : TimeUnit.SECONDS.toMillis(config.adaptiveMaxIntervalSeconds());
+            if (!config.adaptiveExecution()) {
+                this.adaptiveSchedule = null;
+            } else if (previous == null || previous.adaptiveSchedule == null) {
+                this.adaptiveSchedule = new AdaptiveSchedule(adaptiveMaxIntervalMs, config.adaptiveMinCostMs(), config.adaptiveStableRuns());
+            } else {
+                this.adaptiveSchedule = previous.adaptiveSchedule;
+                adaptiveSchedule.configure(adaptiveMaxIntervalMs, config.adaptiveMinCostMs(), config.adaptiveStableRuns());
+            }
+            this.clusterResultStore = clusterResultPath != null
+                    ? new ClusterResultStore(clusterResultPath, instanceId, TimeUnit.SECONDS.toMillis(config.clusterLeaseSeconds()))
+                    : null;
+            this.clusterError = clusterError;
+            this.clusterResultMaxAgeMs = TimeUnit.SECONDS.toMillis(config.clusterResultMaxAgeSeconds());
+
+            HealthCheckExpression parsedExpression = null;
+            String parseError = null;
+            if (previous != null && !scriptChanged(previous)) {
+                parsedExpression = previous.expression;
+                parseError = previous.expressionError;
+            } else if (EXPRESSION_LANGUAGE.equals(language) && StringUtils.isNotBlank(script)) {
+                try {
+                    parsedExpression = HealthCheckExpression.parse(script);
+                } catch (IllegalArgumentException e) {
+                    parseError = e.getMessage();
+                    LOG.error("Invalid expression in Scripted HC {}: {}", hcName, parseError);
                 }
             }
-        } catch (IOException e) {
-            throw new IllegalStateException("Could not load script from path " + jcrPath + ": " + e, e);
+            this.expression = parsedExpression;
+            this.expressionError = parseError;
+        }
+
+        /** @return true if the script source, language or engine selection differ from the given settings */
+        boolean scriptChanged(Settings other) {
+            return !StringUtils.equals(language, other.language) || !StringUtils.equals(script, other.script)
+                    || !StringUtils.equals(scriptUrl, other.scriptUrl) || useGraalJs != other.useGraalJs;
+        }
+
+        String describeScript() {
+            return StringUtils.isNotBlank(script) ? "script " + script : "script url " + scriptUrl;
+        }
+    }
+
+    private static final class PreparedScript {
+        /** null for streamed sources */
+        private final String text;
+        /** -1 for streamed sources evaluated from a reader */
+        private final int lineCount;
+        /** length and hash of streamed sources, -1 for scripts loaded into a string */
+        private final long length;
+        private final long hash;
+        /** {@link #sourceVersion(String, ResourceResolver) version} of a compiled streamed source, null if not known */
+        private final String version;
+        private final ScriptEngine scriptEngine;
+        private final CompiledScript compiledScript;
+
+        private PreparedScript(String text, int lineCount, long length, long hash, String version, ScriptEngine scriptEngine,
+                CompiledScript compiledScript) {
+            this.text = text;
+            this.lineCount = lineCount;
+            this.length = length;
+            this.hash = hash;
+            this.version = version;
+            this.scriptEngine = scriptEngine;
+            this.compiledScript = compiledScript;
+        }
+
+        PreparedScript(String text, ScriptEngine scriptEngine, CompiledScript compiledScript) {
+            this(text, countLines(text), -1, 0, null, scriptEngine, compiledScript);
+        }
+
+        /** A streamed source compiled from the given (fully read) source. */
+        PreparedScript(String version, ScriptReader source, ScriptEngine scriptEngine, CompiledScript compiledScript) {
+            this(null, source.getLineCount(), source.getLength(), source.getHash(), version, scriptEngine, compiledScript);
+        }
+
+        /** A streamed source evaluated from a reader on each execution. */
+        PreparedScript(ScriptEngine scriptEngine) {
+            this(null, -1, -1, 0, null, scriptEngine, null);
+        }
+
+        PreparedScript withVersion(String version) {
+            return new PreparedScript(text, lineCount, length, hash, version, scriptEngine, compiledScript);
+        }
+
+        boolean isEvaluatedFromSource() {
+            return text == null && compiledScript == null;
+        }
+
+        /** @return true if the fully read source has the same length and hash as this script */
+        boolean matches(ScriptReader source) {
+            return length == source.getLength() && hash == source.getHash();
         }
-        return fileContent;
     }
 
     /**
-     * Copied and adapted from org.apache.felix.hc.generalchecks.util.ScriptHelper
+     * Bindings, script context and writers of an execution. They are reset and reused by the next execution
+     * of the check, so executions in steady state do not allocate them again.
      */
-    private static class ScriptHelper {
+    private static final class ScriptExecution {
+        private static final Set<String> STANDARD_BINDINGS = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+                "scriptHelper", "osgi", "jmx", "log", "bundleContext", "resourceResolver", "session", "query", "cache", "lib")));
 
-        public String getFileContents(String url) {
-            String content;
-            try {
-                content = Files.readAllLines(Paths.get(new URI(url))).stream().collect(Collectors.joining("\n"));
-                return content;
-            }catch(IOException | URISyntaxException e) {
-                throw new IllegalArgumentException("Could not read file URL "+url+": "+e, e);
-            }
+        private final Settings settings;
+        private final BundleContext bundleContext;
+        private final ScriptCache cache;
+        private GovernedResultLog log;
+        private final QueryBinding query;
+        private final ScriptHelper.ScriptHelperBinding scriptHelperBinding;
+        private final JmxBinding jmx = new JmxBinding();
+        private final ScriptResourceUsage usage = new ScriptResourceUsage();
+        private final Bindings bindings = new SimpleBindings();
+        private final StringWriter stdout = new StringWriter();
+        private final StringWriter stderr = new StringWriter();
+        private final SimpleScriptContext scriptContext = new SimpleScriptContext();
+
+        ScriptExecution(Settings settings, BundleContext bundleContext, ScriptHelper scriptHelper) {
+            this.settings = settings;
+            this.bundleContext = bundleContext;
+            this.cache = settings.cache;
+            this.query = new QueryBinding(null, null, settings.queryMaxResults, settings.queryTimeoutMs, settings.queryCacheTtlMs, settings.queryFailOnTraversal);
+            this.scriptHelperBinding = scriptHelper.new ScriptHelperBinding(bundleContext);
+            scriptContext.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+            scriptContext.setWriter(stdout);
+            scriptContext.setErrorWriter(stderr);
         }
 
+        void reset(ResourceResolver resourceResolver, GovernedResultLog log, Map<String, Object> lib) {
+            this.log = log;
+            // variables defined by the previous execution are removed, all standard bindings are set again below
+            bindings.keySet().retainAll(STANDARD_BINDINGS);
+            stdout.getBuffer().setLength(0);
+            stderr.getBuffer().setLength(0);
+            jmx.reset();
+            query.reset(resourceResolver, log);
+            bindings.put("scriptHelper", scriptHelperBinding);
+            bindings.put("osgi", scriptHelperBinding); // also register script helper like in web console script console
+            bindings.put("jmx", jmx);
+            bindings.put("log", log);
+            bindings.put("bundleContext", bundleContext);
+            bindings.put("resourceResolver", resourceResolver);
+            bindings.put("session", resourceResolver.adaptTo(Session.class));
+            bindings.put("query", query);
+            bindings.put("cache", cache);
+            bindings.put("lib", lib);
+        }
+
+        /** Drops references to the closed resource resolver and to script data until the next execution. */
+        void release() {
+            bindings.put("resourceResolver", null);
+            bindings.put("session", null);
+            bindings.put("log", null);
+            log = null;
+            query.reset(null, null);
+            jmx.reset();
+        }
+    }
+
+    /**
+     * Copied and adapted from org.apache.felix.hc.generalchecks.util.ScriptHelper
+     */
+    private static class ScriptHelper {
+
         public ScriptEngine getScriptEngine(ScriptEngineManager scriptEngineManager, String language) {
             List<ScriptEngineFactory> engineFactories = scriptEngineManager.getEngineFactories();
             ScriptEngine scriptEngine = engineFactories.stream()
@@ -265,66 +1066,77 @@ public class ScriptedHealthCheck implements HealthCheck {
             return scriptEngine;
         }
         
-        public Object evalScript(BundleContext bundleContext, ScriptEngine scriptEngine, String scriptToExecute, FormattingResultLog log, Map<String,Object> additionalBindings, boolean logScriptResult) throws ScriptException, IOException {
-
-            final Bindings bindings = new SimpleBindings();
-            final ScriptHelperBinding scriptHelper = new ScriptHelperBinding(bundleContext);
-
-            StringWriter stdout = new StringWriter();
-            StringWriter stderr = new StringWriter();
+        private Object evalScript(ScriptExecution execution, ScriptEngine scriptEngine, String scriptToExecute, CompiledScript compiledScript, Reader scriptReader,
+                boolean logScriptResult) throws ScriptException, IOException {
 
-            bindings.put("scriptHelper", scriptHelper);
-            bindings.put("osgi", scriptHelper); // also register script helper like in web console script console
-            bindings.put("log", log);
-            bindings.put("bundleContext", bundleContext);
-            if (additionalBindings != null) {
-                for (Map.Entry<String, Object> additionalBinding : additionalBindings.entrySet()) {
-                    bindings.put(additionalBinding.getKey(), additionalBinding.getValue());
-                }
-            }
-            
-            SimpleScriptContext scriptContext = new SimpleScriptContext();
-            scriptContext.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
-            scriptContext.setWriter(stdout);
-            scriptContext.setErrorWriter(stderr);
+            final GovernedResultLog log = execution.log;
+            final ScriptResourceUsage usage = execution.usage;
+            final SimpleScriptContext scriptContext = execution.scriptContext;
 
             try {
-                log.debug(scriptToExecute);
-                Object scriptResult = scriptEngine.eval(scriptToExecute, scriptContext);
-                appendStreamsToResult(log, stdout, stderr, scriptContext);
+                Object scriptResult;
+                usage.start();
+                try {
+                    if (compiledScript != null) {
+                        scriptResult = compiledScript.eval(scriptContext);
+                    } else if (scriptReader != null) {
+                        scriptResult = scriptEngine.eval(scriptReader, scriptContext);
+                    } else {
+                        scriptResult = scriptEngine.eval(scriptToExecute, scriptContext);
+                    }
+                } finally {
+                    usage.stop();
+                    if (log.isDebugEnabled()) {
+                        log.debug("Script execution {}", usage);
+                    }
+                }
+                appendStreamsToResult(log, execution.stdout, execution.stderr, scriptContext);
 
                 if(scriptResult instanceof Result) {
-                    Result result = (Result) scriptResult;
-                    for(ResultLog.Entry entry: result) {
-                        log.add(entry);
-                    }
+                    log.addAll((Result) scriptResult);
                 } else if(scriptResult != null && logScriptResult){
-                    log.info("Script result: {}", scriptResult);
+                    log.info("Script result: {}", describe(scriptResult));
                 }
                 
                 return scriptResult;
             } finally  {
-                scriptHelper.ungetServices();
+                execution.scriptHelperBinding.ungetServices();
+            }
+        }
+
+        /** Avoids toString() of potentially large collections, maps and arrays. */
+        private static Object describe(Object scriptResult) {
+            if (scriptResult instanceof Collection) {
+                return scriptResult.getClass().getName() + " with " + ((Collection<?>) scriptResult).size() + " elements";
+            } else if (scriptResult instanceof Map) {
+                return scriptResult.getClass().getName() + " with " + ((Map<?, ?>) scriptResult).size() + " entries";
+            } else if (scriptResult.getClass().isArray()) {
+                return scriptResult.getClass().getComponentType().getName() + "[" + Array.getLength(scriptResult) + "]";
             }
+            return scriptResult;
         }
 
         private void appendStreamsToResult(FormattingResultLog log, StringWriter stdout, StringWriter stderr, SimpleScriptContext scriptContext)
                 throws IOException {
             scriptContext.getWriter().flush();
-            String stdoutStr = stdout.toString();
-            if(StringUtils.isNotBlank(stdoutStr)) {
-                log.info("stdout of script: {}", stdoutStr);
+            if(stdout.getBuffer().length() > 0) {
+                String stdoutStr = stdout.toString();
+                if(StringUtils.isNotBlank(stdoutStr)) {
+                    log.info("stdout of script: {}", stdoutStr);
+                }
             }
             
             scriptContext.getErrorWriter().flush();
-            String stderrStr = stderr.toString();
-            if(StringUtils.isNotBlank(stderrStr)) {
-                log.critical("stderr of script: {}", stderrStr);
+            if(stderr.getBuffer().length() > 0) {
+                String stderrStr = stderr.toString();
+                if(StringUtils.isNotBlank(stderrStr)) {
+                    log.critical("stderr of script: {}", stderrStr);
+                }
             }
         }
 
         // Script Helper for OSGi available as binding 'scriptHelper'
-        class ScriptHelperBinding {
+        public class ScriptHelperBinding {
             
             private final BundleContext bundleContext;
             private List<ServiceReference<?>> references;
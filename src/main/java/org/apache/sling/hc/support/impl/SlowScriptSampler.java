@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.osgi.service.component.annotations.Activate;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+
+/**
+ * Samples the stack of a thread executing a health check script once the script runs longer than a
+ * threshold. The samples are aggregated into a compact summary of the most frequent top frames and
+ * script lines, so slow checks can be analysed without attaching a profiler.
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Component(service = SlowScriptSampler.class)
+@Deprecated
+public class SlowScriptSampler {
+
+    private static final int TOP_ENTRIES = 5;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    @Activate
+    protected void activate() {
+        executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "hc-slow-script-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // most executions finish before the threshold, their cancelled samplings must not stay queued until it passes
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    @Deactivate
+    protected void deactivate() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Starts sampling the current thread after thresholdMs, every intervalMs.
+     *
+     * @return the sampling, to be stopped once the script has finished
+     */
+    public Sampling start(long thresholdMs, long intervalMs) {
+        Sampling sampling = new Sampling(Thread.currentThread());
+        try {
+            sampling.future = executor.scheduleAtFixedRate(sampling::sample, thresholdMs, Math.max(intervalMs, 1), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // sampler is shutting down, no samples are taken
+        }
+        return sampling;
+    }
+
+    /** @return the number of samplings waiting for their threshold or next sample */
+    int getQueuedSamplings() {
+        return executor.getQueue().size();
+    }
+
+    static boolean isScriptFrame(StackTraceElement frame) {
+        return frame.getFileName() != null && !frame.getFileName().endsWith(".java") && frame.getLineNumber() > 0;
+    }
+
+    static String format(StackTraceElement frame) {
+        String location = frame.getFileName() != null && frame.getLineNumber() >= 0 ? frame.getFileName() + ":" + frame.getLineNumber()
+                : (frame.isNativeMethod() ? "native" : "unknown");
+        return frame.getClassName() + "." + frame.getMethodName() + "(" + location + ")";
+    }
+
+    public static final class Sampling {
+
+        private final Thread thread;
+        private final Map<String, Integer> topFrames = new HashMap<>();
+        private final Map<String, Integer> scriptLines = new HashMap<>();
+        private int samples;
+        private ScheduledFuture<?> future;
+
+        Sampling(Thread thread) {
+            this.thread = thread;
+        }
+
+        synchronized void sample() {
+            StackTraceElement[] stack = thread.getStackTrace();
+            if (stack.length == 0) {
+                return;
+            }
+            samples++;
+            topFrames.merge(format(stack[0]), 1, Integer::sum);
+            for (StackTraceElement frame : stack) {
+                if (isScriptFrame(frame)) {
+                    scriptLines.merge(frame.getFileName() + " line " + frame.getLineNumber(), 1, Integer::sum);
+                    break;
+                }
+            }
+        }
+
+        /**
+         * Stops sampling.
+         *
+         * @return the summary of the taken samples or null if the threshold was not reached
+         */
+        public synchronized String stop() {
+            if (future != null) {
+                future.cancel(false);
+            }
+            if (samples == 0) {
+                return null;
+            }
+            StringBuilder summary = new StringBuilder();
+            summary.append(samples).append(" stack samples, top frames: ").append(top(topFrames));
+            if (!scriptLines.isEmpty()) {
+                summary.append("; script lines: ").append(top(scriptLines));
+            }
+            return summary.toString();
+        }
+
+        private String top(Map<String, Integer> counts) {
+            List<Map.Entry<String, Integer>> entries = new ArrayList<>(counts.entrySet());
+            entries.sort((e1, e2) -> e2.getValue().compareTo(e1.getValue()));
+            StringBuilder top = new StringBuilder();
+            for (int i = 0; i < entries.size() && i < TOP_ENTRIES; i++) {
+                Map.Entry<String, Integer> entry = entries.get(i);
+                if (i > 0) {
+                    top.append(", ");
+                }
+                top.append(entry.getKey()).append(" (").append(entry.getValue() * 100 / samples).append("%)");
+            }
+            return top.toString();
+        }
+    }
+
+}
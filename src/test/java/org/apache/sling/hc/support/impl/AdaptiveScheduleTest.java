@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+import org.apache.felix.hc.api.Result;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class AdaptiveScheduleTest {
+
+    private static final Result OK = new Result(Result.Status.OK, "all good");
+    private static final Result WARN = new Result(Result.Status.WARN, "not so good");
+
+    @Test
+    public void testBacksOffOnStableExpensiveResults() {
+        AdaptiveSchedule schedule = new AdaptiveSchedule(10000, 100, 3);
+        long now = 0;
+        for (int i = 0; i < 2; i++) {
+            schedule.recordExecution(OK, 2000, now);
+            assertTrue(schedule.isDue(now));
+        }
+        schedule.recordExecution(OK, 2000, now);
+        assertEquals(2000, schedule.getNextExecutionAt());
+        schedule.recordExecution(OK, 2000, now);
+        assertEquals(4000, schedule.getNextExecutionAt());
+        schedule.recordExecution(OK, 2000, now);
+        schedule.recordExecution(OK, 2000, now);
+        assertEquals(10000, schedule.getNextExecutionAt());
+        assertFalse(schedule.isDue(9999));
+        assertTrue(schedule.isDue(10000));
+
+        schedule.recordExecution(WARN, 2000, now);
+        assertTrue(schedule.isDue(now));
+    }
+
+    @Test
+    public void testCheapOrChangingResultsAreAlwaysExecuted() {
+        AdaptiveSchedule cheap = new AdaptiveSchedule(10000, 100, 1);
+        for (int i = 0; i < 10; i++) {
+            cheap.recordExecution(OK, 5, 0);
+        }
+        assertTrue(cheap.isDue(0));
+
+        AdaptiveSchedule changing = new AdaptiveSchedule(10000, 100, 2);
+        for (int i = 0; i < 10; i++) {
+            changing.recordExecution(new Result(Result.Status.OK, "found " + i + " nodes"), 2000, 0);
+        }
+        assertTrue(changing.isDue(0));
+    }
+
+    @Test
+    public void testScriptedHealthCheckReturnsLastResultWhileStable() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        ScriptEngine engine = Mockito.mock(ScriptEngine.class);
+        Mockito.when(engine.eval(Matchers.anyString(), Matchers.any(ScriptContext.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws InterruptedException {
+                executions.incrementAndGet();
+                Thread.sleep(20);
+                ((FormattingResultLog) ((ScriptContext) invocation.getArguments()[1]).getAttribute("log")).info("stable");
+                return null;
+            }
+        });
+        ScriptedHealthCheck.Config config = ScriptedHealthCheckTest.config("expensive()");
+        Mockito.when(config.adaptiveExecution()).thenReturn(true);
+        Mockito.when(config.adaptiveMaxIntervalSeconds()).thenReturn(60L);
+        Mockito.when(config.adaptiveMinCostMs()).thenReturn(10L);
+        Mockito.when(config.adaptiveStableRuns()).thenReturn(2);
+        ScriptedHealthCheck check = ScriptedHealthCheckTest.check(config, engine);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Result.Status.OK, check.execute().getStatus());
+        }
+        assertEquals(2, executions.get());
+
+        // a changed script resets the schedule
+        Mockito.when(config.script()).thenReturn("changed()");
+        check.modified(config);
+        check.execute();
+        assertEquals(3, executions.get());
+    }
+
+}
@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+import org.apache.felix.hc.api.Result;
+import org.apache.felix.hc.api.ResultLog;
+import org.apache.sling.api.resource.ModifiableValueMap;
+import org.apache.sling.api.resource.PersistenceException;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.wrappers.ModifiableValueMapDecorator;
+import org.apache.sling.testing.resourceresolver.MockResourceResolverFactory;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.framework.BundleContext;
+
+/**
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class ClusterResultStoreTest {
+
+    private static final String PATH = ScriptedHealthCheck.DEFAULT_CLUSTER_RESULT_PATH + "/test";
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        ResourceResolver resourceResolver = new MockResourceResolverFactory().getServiceResourceResolver(null);
+        ClusterResultStore store = new ClusterResultStore(PATH, "instance1", 60000);
+        assertEquals(null, store.read(resourceResolver));
+
+        FormattingResultLog log = new FormattingResultLog();
+        log.debug("details");
+        log.warn("not so good");
+        store.write(resourceResolver, new Result(log));
+
+        ClusterResultStore.StoredResult stored = store.read(resourceResolver);
+        assertEquals("instance1", stored.getOwner());
+        assertEquals(Result.Status.WARN, stored.getResult().getStatus());
+        Iterator<ResultLog.Entry> entries = stored.getResult().iterator();
+        ResultLog.Entry debug = entries.next();
+        assertTrue(debug.isDebug());
+        assertEquals("details", debug.getMessage());
+        assertEquals("not so good", entries.next().getMessage());
+    }
+
+    @Test
+    public void testLease() throws Exception {
+        ResourceResolverFactory factory = new MockResourceResolverFactory();
+        ClusterResultStore store1 = new ClusterResultStore(PATH, "instance1", 60000);
+        ClusterResultStore store2 = new ClusterResultStore(PATH, "instance2", 60000);
+        assertTrue(store1.tryAcquireLease(factory.getServiceResourceResolver(null)));
+        assertFalse(store2.tryAcquireLease(factory.getServiceResourceResolver(null)));
+        assertTrue(store1.tryAcquireLease(factory.getServiceResourceResolver(null)));
+
+        store1.releaseLease(factory.getServiceResourceResolver(null));
+        assertTrue(store2.tryAcquireLease(factory.getServiceResourceResolver(null)));
+        assertFalse(store1.tryAcquireLease(factory.getServiceResourceResolver(null)));
+    }
+
+    @Test
+    public void testLeaseRenewedOnlyAfterHalfOfIt() throws Exception {
+        ClusterResultStore store = new ClusterResultStore(PATH, "instance1", 60000);
+        Map<String, Object> lease = lease("instance1", System.currentTimeMillis() + 50000);
+        ResourceResolver resourceResolver = resolver(lease);
+        assertTrue(store.tryAcquireLease(resourceResolver));
+        Mockito.verify(resourceResolver, Mockito.never()).commit();
+
+        lease = lease("instance1", System.currentTimeMillis() + 20000);
+        resourceResolver = resolver(lease);
+        assertTrue(store.tryAcquireLease(resourceResolver));
+        Mockito.verify(resourceResolver).commit();
+        assertTrue((Long) lease.get(ClusterResultStore.PN_LEASE_EXPIRES) > System.currentTimeMillis() + 50000);
+    }
+
+    @Test
+    public void testConflictingCommitLosesElection() throws Exception {
+        // the lease of instance1 expired, but another instance changes it while instance2 tries to acquire it
+        ResourceResolver resourceResolver = resolver(lease("instance1", System.currentTimeMillis() - 1));
+        Mockito.doThrow(new PersistenceException("OakState0001: Unresolved conflicts")).when(resourceResolver).commit();
+        assertFalse(new ClusterResultStore(PATH, "instance2", 60000).tryAcquireLease(resourceResolver));
+        Mockito.verify(resourceResolver).revert();
+    }
+
+    @Test
+    public void testChecksWithSameName() throws Exception {
+        ScriptEngine engine = Mockito.mock(ScriptEngine.class);
+        Mockito.when(engine.eval(Matchers.anyString(), Matchers.any(ScriptContext.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                ScriptContext context = (ScriptContext) invocation.getArguments()[1];
+                ((FormattingResultLog) context.getAttribute("log")).info("executed {}", invocation.getArguments()[0]);
+                return null;
+            }
+        });
+        BundleContext bundleContext = Mockito.mock(BundleContext.class);
+        ResourceResolverFactory repository = new MockResourceResolverFactory();
+        List<ScriptedHealthCheck> checks = new ArrayList<>();
+        for (String[] nameAndKey : new String[][] { { "a b", "first" }, { "a_b", "second" }, { "a b", "first" } }) {
+            ScriptedHealthCheck.Config config = ScriptedHealthCheckTest.config("check " + checks.size());
+            Mockito.when(config.hc_name()).thenReturn(nameAndKey[0]);
+            Mockito.when(config.clusterSingleton()).thenReturn(true);
+            Mockito.when(config.clusterKey()).thenReturn(nameAndKey[1]);
+            Mockito.when(config.clusterLeaseSeconds()).thenReturn(60L);
+            Mockito.when(config.clusterResultMaxAgeSeconds()).thenReturn(300L);
+            ScriptedHealthCheck check = ScriptedHealthCheckTest.check(config, engine, bundleContext);
+            SetField.set(check, "resourceResolverFactory", repository);
+            checks.add(check);
+        }
+        for (int run = 0; run < 2; run++) {
+            for (int i = 0; i < checks.size(); i++) {
+                Result result = checks.get(i).execute();
+                assertTrue(result.toString(), result.toString().contains("executed check " + i));
+                assertFalse(result.toString(), result.toString().contains("Result of cluster instance"));
+            }
+        }
+        // the third check uses the key of the first one, it is executed locally and says why
+        Result duplicate = checks.get(2).execute();
+        assertEquals(Result.Status.WARN, duplicate.getStatus());
+        assertTrue(duplicate.toString(), duplicate.toString().contains("Cluster key 'first' is used by another check already"));
+
+        // once the first check is gone, the key can be used by another check
+        checks.get(0).deactivate();
+        ScriptedHealthCheck.Config config = ScriptedHealthCheckTest.config("check 3");
+        Mockito.when(config.clusterSingleton()).thenReturn(true);
+        Mockito.when(config.clusterKey()).thenReturn("first");
+        Mockito.when(config.clusterLeaseSeconds()).thenReturn(60L);
+        Mockito.when(config.clusterResultMaxAgeSeconds()).thenReturn(300L);
+        ScriptedHealthCheck replacement = ScriptedHealthCheckTest.check(config, engine, bundleContext);
+        SetField.set(replacement, "resourceResolverFactory", repository);
+        Result result = replacement.execute();
+        assertEquals(result.toString(), Result.Status.OK, result.getStatus());
+    }
+
+    @Test
+    public void testMissingKeyExecutesLocally() throws Exception {
+        ScriptedHealthCheck.Config config = ScriptedHealthCheckTest.config("scan()");
+        Mockito.when(config.clusterSingleton()).thenReturn(true);
+        Mockito.when(config.clusterKey()).thenReturn("");
+        ScriptedHealthCheck check = ScriptedHealthCheckTest.check(config, Mockito.mock(ScriptEngine.class));
+        Result result = check.execute();
+        assertEquals(Result.Status.WARN, result.getStatus());
+        assertTrue(result.toString(), result.toString().contains("requires a cluster key"));
+    }
+
+    private static Map<String, Object> lease(String owner, long expires) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put(ClusterResultStore.PN_LEASE_OWNER, owner);
+        properties.put(ClusterResultStore.PN_LEASE_EXPIRES, expires);
+        return properties;
+    }
+
+    /** Resolver with a stubbed lease resource, commits are only recorded. */
+    private static ResourceResolver resolver(Map<String, Object> properties) {
+        Resource resource = Mockito.mock(Resource.class);
+        Mockito.when(resource.adaptTo(ModifiableValueMap.class)).thenReturn(new ModifiableValueMapDecorator(properties));
+        ResourceResolver resourceResolver = Mockito.mock(ResourceResolver.class);
+        Mockito.when(resourceResolver.getResource(PATH)).thenReturn(resource);
+        return resourceResolver;
+    }
+
+    @Test
+    public void testTwoInstancesShareResult() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        ScriptEngine engine = Mockito.mock(ScriptEngine.class);
+        Mockito.when(engine.eval(Matchers.anyString(), Matchers.any(ScriptContext.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                ScriptContext context = (ScriptContext) invocation.getArguments()[1];
+                ((FormattingResultLog) context.getAttribute("log")).warn("expensive scan found {} issues", executions.incrementAndGet());
+                return null;
+            }
+        });
+        ScriptedHealthCheck.Config config = ScriptedHealthCheckTest.config("scan()");
+        Mockito.when(config.clusterSingleton()).thenReturn(true);
+        Mockito.when(config.clusterResultPath()).thenReturn(ScriptedHealthCheck.DEFAULT_CLUSTER_RESULT_PATH);
+        Mockito.when(config.clusterKey()).thenReturn("test");
+        Mockito.when(config.clusterLeaseSeconds()).thenReturn(60L);
+        Mockito.when(config.clusterResultMaxAgeSeconds()).thenReturn(300L);
+
+        ResourceResolverFactory sharedRepository = new MockResourceResolverFactory();
+        ScriptedHealthCheck instance1 = ScriptedHealthCheckTest.check(config, engine);
+        SetField.set(instance1, "resourceResolverFactory", sharedRepository);
+        ScriptedHealthCheck instance2 = ScriptedHealthCheckTest.check(config, engine);
+        SetField.set(instance2, "resourceResolverFactory", sharedRepository);
+
+        Result result1 = instance1.execute();
+        assertEquals(Result.Status.WARN, result1.getStatus());
+        assertTrue(result1.toString(), result1.toString().contains("found 1 issues"));
+
+        Result result2 = instance2.execute();
+        assertEquals(1, executions.get());
+        assertEquals(Result.Status.WARN, result2.getStatus());
+        assertTrue(result2.toString(), result2.toString().contains("found 1 issues"));
+        assertTrue(result2.toString(), result2.toString().contains("Result of cluster instance"));
+
+        // the lease is released on deactivation, the other instance takes over
+        instance1.deactivate();
+        assertTrue(instance2.execute().toString().contains("found 2 issues"));
+        assertTrue(instance1.execute().toString().contains("found 2 issues"));
+        assertEquals(2, executions.get());
+
+        // stale results are not used
+        Mockito.when(config.clusterResultMaxAgeSeconds()).thenReturn(-1L);
+        instance1.modified(config);
+        assertTrue(instance1.execute().toString().contains("found 3 issues"));
+    }
+
+    @Test
+    public void testLeaseReleasedWhenKeyChanges() throws Exception {
+        ScriptEngine engine = Mockito.mock(ScriptEngine.class);
+        ScriptedHealthCheck.Config config = ScriptedHealthCheckTest.config("scan()");
+        Mockito.when(config.clusterSingleton()).thenReturn(true);
+        Mockito.when(config.clusterResultPath()).thenReturn(ScriptedHealthCheck.DEFAULT_CLUSTER_RESULT_PATH);
+        Mockito.when(config.clusterKey()).thenReturn("test");
+        Mockito.when(config.clusterLeaseSeconds()).thenReturn(60L);
+        Mockito.when(config.clusterResultMaxAgeSeconds()).thenReturn(300L);
+
+        ResourceResolverFactory sharedRepository = new MockResourceResolverFactory();
+        ScriptedHealthCheck check = ScriptedHealthCheckTest.check(config, engine);
+        SetField.set(check, "resourceResolverFactory", sharedRepository);
+        check.execute();
+        ClusterResultStore other = new ClusterResultStore(PATH, "instance2", 60000);
+        assertFalse(other.tryAcquireLease(sharedRepository.getServiceResourceResolver(null)));
+
+        // the check now stores its result at another path, the lease at the previous path is released
+        Mockito.when(config.clusterKey()).thenReturn("renamed");
+        check.modified(config);
+        assertTrue(other.tryAcquireLease(sharedRepository.getServiceResourceResolver(null)));
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.felix.hc.api.Result;
+import org.apache.felix.hc.api.ResultLog;
+import org.junit.Test;
+
+/**
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class GovernedResultLogTest {
+
+    private static List<String> messages(Result result) {
+        List<String> messages = new ArrayList<>();
+        for (ResultLog.Entry entry : result) {
+            messages.add(entry.getStatus() + " " + entry.getMessage());
+        }
+        return messages;
+    }
+
+    @Test
+    public void testCollapsesRepeatedMessages() {
+        GovernedResultLog log = new GovernedResultLog(100, 0, false);
+        for (int i = 0; i < 1000; i++) {
+            log.info("checked node {}", i % 2 == 0 ? "a" : "b");
+        }
+        log.warn("checked node {}", "a");
+        assertEquals("[OK checked node a (x500), OK checked node b (x500), WARN checked node a]", messages(log.toResult()).toString());
+        assertEquals(Result.Status.WARN, log.toResult().getStatus());
+    }
+
+    @Test
+    public void testMaxEntriesKeepsWorstStatus() {
+        GovernedResultLog log = new GovernedResultLog(2, 0, false);
+        log.info("one");
+        log.info("two");
+        log.info("three");
+        log.critical("four");
+        log.info("one");
+        Result result = log.toResult();
+        assertEquals(Result.Status.CRITICAL, result.getStatus());
+        assertEquals("[OK one (x2), OK two, CRITICAL 2 further entries omitted (limit of 2 distinct entries reached)]", messages(result).toString());
+    }
+
+    @Test
+    public void testResultCreatedFromLog() {
+        GovernedResultLog log = new GovernedResultLog(2, 0, false);
+        log.info("one");
+        log.info("one");
+        log.warn("two");
+        log.info("three");
+        log.critical("four");
+        Result result = new Result(log);
+        assertEquals(Result.Status.CRITICAL, result.getStatus());
+        assertEquals("[OK one, WARN two, CRITICAL Further entries omitted (limit of 2 distinct entries reached)]", messages(result).toString());
+
+        // entries of a result created from the log are not counted twice
+        log.addAll(result);
+        assertEquals("[OK one (x2), WARN two, CRITICAL 2 further entries omitted (limit of 2 distinct entries reached)]", messages(log.toResult()).toString());
+    }
+
+    @Test
+    public void testTruncatesLongMessages() {
+        GovernedResultLog log = new GovernedResultLog(0, 10, false);
+        log.info("0123456789abcdef");
+        assertEquals("[OK 0123456789... (6 characters truncated)]", messages(log.toResult()).toString());
+    }
+
+    @Test
+    public void testDebugEntriesAreNotFormattedUnlessEnabled() {
+        Object expensive = new Object() {
+            @Override
+            public String toString() {
+                throw new AssertionError("debug message must not be formatted");
+            }
+        };
+        GovernedResultLog log = new GovernedResultLog(0, 0, false);
+        log.debug("value: {}", expensive);
+        log.add(new ResultLog.Entry("added debug entry", true));
+        assertFalse(log.toResult().iterator().hasNext());
+
+        GovernedResultLog debugLog = new GovernedResultLog(0, 0, true);
+        debugLog.debug("value: {}", "shown");
+        assertTrue(debugLog.toResult().iterator().next().isDebug());
+    }
+
+}
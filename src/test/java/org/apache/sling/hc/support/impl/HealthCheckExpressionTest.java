@@ -0,0 +1,139 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+import org.apache.felix.hc.api.Result;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+
+/**
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class HealthCheckExpressionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Result evaluate(String expression) throws Exception {
+        BundleContext bundleContext = Mockito.mock(BundleContext.class);
+        Mockito.when(bundleContext.getServiceReference("com.example.Present")).thenReturn(Mockito.mock(ServiceReference.class));
+        ResourceResolver resolver = Mockito.mock(ResourceResolver.class);
+        Mockito.when(resolver.getResource("/content")).thenReturn(Mockito.mock(Resource.class));
+
+        FormattingResultLog log = new FormattingResultLog();
+        HealthCheckExpression.parse(expression).evaluate(new HealthCheckExpression.Context(bundleContext, resolver, log));
+        return new Result(log);
+    }
+
+    @Test
+    public void testServiceAndResource() throws Exception {
+        assertTrue(evaluate("service('com.example.Present')").isOk());
+        assertFalse(evaluate("service('com.example.Missing')").isOk());
+        assertTrue(evaluate("resource('/content') && !resource('/missing')").isOk());
+        assertTrue(evaluate("service('com.example.Missing') || resource(\"/content\")").isOk());
+        assertEquals(Result.Status.CRITICAL, evaluate("!(service('com.example.Present'))").getStatus());
+    }
+
+    @Test
+    public void testJmxComparison() throws Exception {
+        assertTrue(evaluate("jmx('java.lang:type=Threading', 'ThreadCount') > 0").isOk());
+        assertTrue(evaluate("jmx('java.lang:type=Memory', 'HeapMemoryUsage.used') >= 1 && jmx('java.lang:type=Threading', 'ThreadCount') < 1000000").isOk());
+        assertFalse(evaluate("jmx('java.lang:type=Threading', 'ThreadCount') == -1").isOk());
+        assertTrue(evaluate("jmx('java.lang:type=Runtime', 'SpecVendor') != ''").isOk());
+    }
+
+    @Test
+    public void testUsesResources() {
+        assertFalse(HealthCheckExpression.parse("service('a') && true").usesResources());
+        assertTrue(HealthCheckExpression.parse("service('a') || resource('/b')").usesResources());
+    }
+
+    @Test
+    public void testNonBooleanResult() throws Exception {
+        assertEquals(Result.Status.HEALTH_CHECK_ERROR, evaluate("42").getStatus());
+    }
+
+    @Test
+    public void testParseErrors() {
+        for (String invalid : new String[] { "", "service(", "service('a'", "unknown('a')", "jmx('invalid', 'a')", "1 < ", "'unterminated", "a # b",
+                "resource('/a') resource('/b')" }) {
+            try {
+                HealthCheckExpression.parse(invalid);
+                fail("Expected parse error for " + invalid);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("expression: " + invalid));
+            }
+        }
+    }
+
+    @Test
+    public void testScriptedHealthCheckWithExpression() throws Exception {
+        ScriptedHealthCheck.Config config = ScriptedHealthCheckTest.config("jmx('java.lang:type=Threading', 'ThreadCount') > 0");
+        Mockito.when(config.language()).thenReturn("Expression");
+        Result result = ScriptedHealthCheckTest.check(config, null).execute();
+        assertEquals(result.toString(), Result.Status.OK, result.getStatus());
+
+        Mockito.when(config.script()).thenReturn("jmx(");
+        result = ScriptedHealthCheckTest.check(config, null).execute();
+        assertEquals(Result.Status.HEALTH_CHECK_ERROR, result.getStatus());
+        assertTrue(result.toString().contains("Invalid expression"));
+    }
+
+    @Test
+    public void testExpressionFromScriptUrlParsedOnce() throws Exception {
+        File file = folder.newFile("check.expression");
+        Files.write(file.toPath(), "jmx('java.lang:type=Threading', 'ThreadCount') > 0".getBytes(StandardCharsets.UTF_8));
+        ScriptedHealthCheck.Config config = ScriptedHealthCheckTest.config("");
+        Mockito.when(config.language()).thenReturn("expression");
+        Mockito.when(config.scriptUrl()).thenReturn(file.toURI().toString());
+        ScriptedHealthCheck check = ScriptedHealthCheckTest.check(config, null);
+        assertTrue(check.execute().isOk());
+        Object parsed = loadedExpression(check);
+        assertTrue(check.execute().isOk());
+        assertSame(parsed, loadedExpression(check));
+
+        Files.write(file.toPath(), "jmx('java.lang:type=Threading', 'ThreadCount') < 0".getBytes(StandardCharsets.UTF_8));
+        assertEquals(Result.Status.CRITICAL, check.execute().getStatus());
+    }
+
+    private static Object loadedExpression(ScriptedHealthCheck check) throws Exception {
+        Field field = ScriptedHealthCheck.class.getDeclaredField("loadedExpression");
+        field.setAccessible(true);
+        return field.get(check);
+    }
+
+}
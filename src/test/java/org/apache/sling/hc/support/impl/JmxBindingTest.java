@@ -0,0 +1,84 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+
+import org.junit.Test;
+
+/**
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class JmxBindingTest {
+
+    @Test
+    public void testGetCompositeAttribute() throws Exception {
+        JmxBinding jmx = new JmxBinding();
+        assertTrue(((Long) jmx.get("java.lang:type=Memory", "HeapMemoryUsage.used")) > 0);
+        assertEquals(ManagementFactory.getRuntimeMXBean().getName(), jmx.get("java.lang:type=Runtime", "Name"));
+    }
+
+    @Test
+    public void testQuery() throws Exception {
+        JmxBinding jmx = new JmxBinding();
+        assertFalse(jmx.query("java.lang:type=GarbageCollector,*").isEmpty());
+        Map<String, Map<String, Object>> collectors = jmx.queryAttributes("java.lang:type=GarbageCollector,*", "CollectionCount");
+        assertFalse(collectors.isEmpty());
+        assertTrue(collectors.values().iterator().next().containsKey("CollectionCount"));
+    }
+
+    @Test
+    public void testOnlyRequestedAttributesRead() throws Exception {
+        MBeanServer platformServer = ManagementFactory.getPlatformMBeanServer();
+        AtomicInteger roundTrips = new AtomicInteger();
+        List<String> attributesRead = new ArrayList<>();
+        MBeanServer server = (MBeanServer) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { MBeanServer.class }, (proxy, method, args) -> {
+            if ("getAttributes".equals(method.getName())) {
+                roundTrips.incrementAndGet();
+                attributesRead.addAll(Arrays.asList((String[]) args[1]));
+            } else if ("getAttribute".equals(method.getName()) || "getMBeanInfo".equals(method.getName())) {
+                roundTrips.incrementAndGet();
+            }
+            return method.invoke(platformServer, args);
+        });
+        JmxBinding jmx = new JmxBinding(server);
+        // a batch costs one round trip, reading its attributes again none
+        jmx.getAttributes("java.lang:type=Threading", "DaemonThreadCount", "ThreadCount", "PeakThreadCount");
+        jmx.get("java.lang:type=Threading", "ThreadCount");
+        jmx.get("java.lang:type=Threading", "PeakThreadCount");
+        assertEquals(1, roundTrips.get());
+
+        // a single attribute does not read the other attributes of the MBean
+        assertEquals(ManagementFactory.getRuntimeMXBean().getName(), jmx.get("java.lang:type=Runtime", "Name"));
+        assertEquals(2, roundTrips.get());
+        assertFalse(attributesRead.toString(), attributesRead.contains("SystemProperties"));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.felix.hc.api.Result;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class PolyglotScriptEngineProviderTest {
+
+    private final PolyglotScriptEngineProvider provider = new PolyglotScriptEngineProvider();
+
+    @Before
+    public void setup() {
+        provider.activate();
+    }
+
+    @After
+    public void cleanup() {
+        provider.deactivate();
+    }
+
+    private ScriptedHealthCheck check(String script) throws Exception {
+        ScriptedHealthCheck.Config config = ScriptedHealthCheckTest.config(script);
+        Mockito.when(config.language()).thenReturn("ECMAScript");
+        Mockito.when(config.useGraalJs()).thenReturn(true);
+        ScriptedHealthCheck check = ScriptedHealthCheckTest.check(config, null);
+        SetField.set(check, "polyglotScriptEngineProvider", provider);
+        return check;
+    }
+
+    @Test
+    public void testEngineCreatedOnFirstJavaScriptRequest() {
+        assertFalse(provider.isEngineCreated());
+        assertNull(provider.getScriptEngine("groovy"));
+        assertFalse(provider.isEngineCreated());
+        assertNotNull(provider.getScriptEngine("js"));
+        assertTrue(provider.isEngineCreated());
+    }
+
+    @Test
+    public void testOnlyJavaScript() {
+        assertNotNull(provider.getScriptEngine("ecmascript"));
+        assertNotNull(provider.getScriptEngine("js"));
+        assertNull(provider.getScriptEngine("groovy"));
+    }
+
+    @Test
+    public void testBindingsAndResult() throws Exception {
+        ScriptedHealthCheck check = check("log.info('ok from ' + typeof scriptHelper.getService); print('printed'); 40 + 2");
+        Result result = check.execute();
+        assertEquals(result.toString(), Result.Status.OK, result.getStatus());
+        assertTrue(result.toString(), result.toString().contains("ok from function"));
+        assertTrue(result.toString(), result.toString().contains("stdout of script: printed"));
+        assertTrue(result.toString(), result.toString().contains("Script result: 42"));
+        // second execution reuses the cached source on the shared engine
+        assertEquals(Result.Status.OK, check.execute().getStatus());
+    }
+
+    @Test
+    public void testHostResult() throws Exception {
+        Result result = check("var Result = Java.type('org.apache.felix.hc.api.Result'); new Result(Result.Status.WARN, 'from script')").execute();
+        assertEquals(Result.Status.WARN, result.getStatus());
+        assertTrue(result.toString(), result.toString().contains("from script"));
+    }
+
+    @Test
+    public void testSyntaxError() throws Exception {
+        Result result = check("log.info('unterminated").execute();
+        assertEquals(Result.Status.HEALTH_CHECK_ERROR, result.getStatus());
+        assertTrue(result.toString(), result.toString().contains("ScriptException"));
+    }
+
+}
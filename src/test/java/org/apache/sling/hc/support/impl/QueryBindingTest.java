@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+import org.apache.felix.hc.api.Result;
+import org.apache.sling.api.resource.Resource;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class QueryBindingTest {
+
+    private static final String STATEMENT = "SELECT * FROM [nt:base] WHERE [sling:resourceType] = 'test'";
+
+    private final ResourceResolver resolver = Mockito.mock(ResourceResolver.class);
+    private final List<Resource> resources = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        QueryBinding.clearCache();
+        for (String path : Arrays.asList("/a", "/b", "/c")) {
+            Resource resource = Mockito.mock(Resource.class);
+            Mockito.when(resource.getPath()).thenReturn(path);
+            resources.add(resource);
+        }
+        Mockito.when(resolver.findResources(Matchers.anyString(), Matchers.anyString())).thenAnswer(new Answer<Iterator<Resource>>() {
+            @Override
+            public Iterator<Resource> answer(InvocationOnMock invocation) {
+                return resources.iterator();
+            }
+        });
+    }
+
+    @Test
+    public void testResultLimit() {
+        FormattingResultLog log = new FormattingResultLog();
+        QueryBinding query = new QueryBinding(resolver, log, 2, 0, 0, true);
+        assertEquals(Arrays.asList("/a", "/b"), query.paths(STATEMENT));
+        assertEquals(Result.Status.WARN, new Result(log).getStatus());
+        assertTrue(new Result(log).toString().contains("Query result limited to 2 results"));
+    }
+
+    @Test
+    public void testLimitReportedForCachedResult() {
+        AtomicInteger hasNextCalls = new AtomicInteger();
+        Iterator<Resource> delegate = resources.iterator();
+        Mockito.when(resolver.findResources(Matchers.anyString(), Matchers.anyString())).thenReturn(new Iterator<Resource>() {
+            @Override
+            public boolean hasNext() {
+                hasNextCalls.incrementAndGet();
+                return delegate.hasNext();
+            }
+
+            @Override
+            public Resource next() {
+                return delegate.next();
+            }
+        });
+        QueryBinding query = new QueryBinding(resolver, new FormattingResultLog(), 2, 0, 10000, true);
+        assertEquals(2, query.count(STATEMENT));
+        // no row beyond the limit is fetched
+        assertEquals(2, hasNextCalls.get());
+
+        FormattingResultLog log = new FormattingResultLog();
+        assertEquals(2, new QueryBinding(resolver, log, 2, 0, 10000, true).count(STATEMENT));
+        Mockito.verify(resolver, Mockito.times(1)).findResources(Matchers.anyString(), Matchers.anyString());
+        assertEquals(Result.Status.WARN, new Result(log).getStatus());
+        assertTrue(new Result(log).toString(), new Result(log).toString().contains("Query result limited to 2 results"));
+    }
+
+    @Test
+    public void testCachesIdenticalQueries() {
+        QueryBinding query = new QueryBinding(resolver, new FormattingResultLog(), 10, 0, 10000, true);
+        assertEquals(3, query.count(STATEMENT));
+        assertEquals(3, new QueryBinding(resolver, new FormattingResultLog(), 10, 0, 10000, true).count(STATEMENT));
+        Mockito.verify(resolver, Mockito.times(1)).findResources(STATEMENT + QueryBinding.TRAVERSAL_FAIL_OPTION, QueryBinding.JCR_SQL2);
+    }
+
+    @Test
+    public void testFindIsLazy() {
+        Iterator<Resource> it = new QueryBinding(resolver, new FormattingResultLog(), 10, 0, 10000, true).find(STATEMENT);
+        assertEquals("/a", it.next().getPath());
+        Mockito.verify(resources.get(1), Mockito.never()).getPath();
+    }
+
+    @Test
+    public void testTraversalOption() {
+        QueryBinding query = new QueryBinding(resolver, new FormattingResultLog(), 10, 0, 0, true);
+        assertEquals(STATEMENT + QueryBinding.TRAVERSAL_FAIL_OPTION, query.prepare(STATEMENT, "JCR-SQL2"));
+        assertEquals(STATEMENT + " option(traversal ok)", query.prepare(STATEMENT + " option(traversal ok)", "JCR-SQL2"));
+        assertEquals(STATEMENT + " OPTION (TRAVERSAL OK)", query.prepare(STATEMENT + " OPTION (TRAVERSAL OK)", "JCR-SQL2"));
+        assertEquals(STATEMENT + "\nOption\t(index tag x)", query.prepare(STATEMENT + "\nOption\t(index tag x)", "JCR-SQL2"));
+        assertEquals("/jcr:root//*", query.prepare("/jcr:root//*", "xpath"));
+        assertEquals(STATEMENT, new QueryBinding(resolver, new FormattingResultLog(), 10, 0, 0, false).prepare(STATEMENT, "JCR-SQL2"));
+    }
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class ScriptCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTtl() throws Exception {
+        ScriptCache cache = new ScriptCache(10, 0);
+        cache.put("forever", 1);
+        cache.put("short", 2, 1);
+        Thread.sleep(5);
+        assertEquals(1, cache.get("forever"));
+        assertNull(cache.get("short"));
+        assertEquals("default", cache.get("short", "default"));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ScriptCache cache = new ScriptCache(2, 0);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+        cache.put("c", 3);
+        assertEquals(1, cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(3, cache.get("c"));
+    }
+
+    @Test
+    public void testComputeIfAbsent() {
+        ScriptCache cache = new ScriptCache(10, 0);
+        assertEquals("a1", cache.computeIfAbsent("a", k -> k + "1"));
+        assertEquals("a1", cache.computeIfAbsent("a", k -> k + "2"));
+    }
+
+    @Test
+    public void testPersistAndLoad() throws Exception {
+        File file = new File(folder.getRoot(), "cache/test.ser");
+        ScriptCache cache = new ScriptCache(10, 0);
+        cache.put("checkpoint", 42L);
+        cache.put("notSerializable", new Object());
+        cache.persist(file);
+
+        ScriptCache loaded = new ScriptCache(10, 0);
+        loaded.load(file);
+        assertEquals(42L, loaded.get("checkpoint"));
+        assertNull(loaded.get("notSerializable"));
+        assertEquals(1, loaded.size());
+    }
+
+    @Test
+    public void testPersistsSimpleTypesAndCollections() throws Exception {
+        File file = new File(folder.getRoot(), "cache/test.dat");
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("count", 3);
+        map.put("paths", Arrays.asList("/a", "/b"));
+        ScriptCache cache = new ScriptCache(10, 0);
+        cache.put("map", map);
+        cache.put("date", new Date(1000));
+        cache.put("text", new StringBuilder("like a GString"));
+        // a non-serializable element only drops its own entry
+        cache.put("mixed", Arrays.asList("ok", new Object()));
+        cache.persist(file);
+
+        ScriptCache loaded = new ScriptCache(10, 0);
+        loaded.load(file);
+        assertEquals(map, loaded.get("map"));
+        assertEquals(new Date(1000), loaded.get("date"));
+        assertEquals("like a GString", loaded.get("text"));
+        assertNull(loaded.get("mixed"));
+        assertEquals(3, loaded.size());
+    }
+
+    @Test
+    public void testUnreadableEntrySkipped() throws Exception {
+        File file = new File(folder.getRoot(), "cache/test.dat");
+        ScriptCache cache = new ScriptCache(10, 0);
+        cache.put("a", "first");
+        cache.put("b", 42);
+        cache.put("c", "last");
+        cache.persist(file);
+
+        // corrupt the type of entry b: key (2 bytes length + 1 byte), expiry (8 bytes), value length (4 bytes), type
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        byte[] key = new byte[] { 0, 1, 'b' };
+        int typeOffset = indexOf(bytes, key) + key.length + 8 + 4;
+        bytes[typeOffset] = 99;
+        Files.write(file.toPath(), bytes);
+
+        ScriptCache loaded = new ScriptCache(10, 0);
+        loaded.load(file);
+        assertEquals("first", loaded.get("a"));
+        assertNull(loaded.get("b"));
+        assertEquals("last", loaded.get("c"));
+    }
+
+    @Test
+    public void testFailedWriteKeepsPreviousFile() throws Exception {
+        File file = new File(folder.getRoot(), "cache/test.dat");
+        ScriptCache cache = new ScriptCache(10, 0);
+        cache.put("checkpoint", 1L);
+        cache.persist(file);
+
+        // the temporary file cannot be created
+        new File(file.getParentFile(), file.getName() + ".tmp").mkdirs();
+        cache.put("checkpoint", 2L);
+        cache.persist(file);
+
+        ScriptCache loaded = new ScriptCache(10, 0);
+        loaded.load(file);
+        assertEquals(1L, loaded.get("checkpoint"));
+    }
+
+    @Test
+    public void testFileOfUnknownFormatIgnored() throws Exception {
+        File file = folder.newFile("legacy.ser");
+        Files.write(file.toPath(), "not a cache file".getBytes(StandardCharsets.UTF_8));
+        ScriptCache loaded = new ScriptCache(10, 0);
+        loaded.load(file);
+        assertEquals(0, loaded.size());
+    }
+
+    private static int indexOf(byte[] bytes, byte[] pattern) {
+        for (int i = 0; i + pattern.length <= bytes.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + pattern.length), pattern)) {
+                return i;
+            }
+        }
+        throw new AssertionError("pattern not found");
+    }
+
+}
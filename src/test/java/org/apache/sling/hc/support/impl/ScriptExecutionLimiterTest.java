@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleSupplier;
+
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+import org.apache.felix.hc.api.Result;
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class ScriptExecutionLimiterTest {
+
+    static ScriptExecutionLimiter limiter(int maxConcurrentExecutions) {
+        ScriptExecutionLimiter limiter = new ScriptExecutionLimiter();
+        ScriptExecutionLimiter.Config config = Mockito.mock(ScriptExecutionLimiter.Config.class);
+        Mockito.when(config.maxConcurrentExecutions()).thenReturn(maxConcurrentExecutions);
+        Mockito.when(config.acquireTimeoutMs()).thenReturn(10L);
+        limiter.activate(config);
+        return limiter;
+    }
+
+    @Test
+    public void testConcurrencyLimit() {
+        ScriptExecutionLimiter limiter = limiter(2);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse("Expecting no third slot", limiter.tryAcquire());
+        limiter.release();
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testUnlimited() {
+        ScriptExecutionLimiter limiter = limiter(0);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+    }
+
+    @Test
+    public void testLimitChangedInPlace() {
+        ScriptExecutionLimiter limiter = new ScriptExecutionLimiter();
+        ScriptExecutionLimiter.Config config = Mockito.mock(ScriptExecutionLimiter.Config.class);
+        Mockito.when(config.acquireTimeoutMs()).thenReturn(10L);
+        limiter.activate(config);
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+
+        // slots acquired before the modification are still released correctly
+        Mockito.when(config.maxConcurrentExecutions()).thenReturn(2);
+        limiter.modified(config);
+        assertFalse("Expecting no third slot", limiter.tryAcquire());
+        limiter.release();
+        assertTrue(limiter.tryAcquire());
+        limiter.release();
+        limiter.release();
+
+        Mockito.when(config.maxConcurrentExecutions()).thenReturn(1);
+        limiter.modified(config);
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void testSheddingDisabledByDefault() {
+        assertNull(limiter(1).getOverloadReason());
+    }
+
+    @Test
+    public void testShedsLoadAboveCpuThreshold() throws Exception {
+        ScriptExecutionLimiter limiter = new ScriptExecutionLimiter();
+        ScriptExecutionLimiter.Config config = Mockito.mock(ScriptExecutionLimiter.Config.class);
+        Mockito.when(config.cpuLoadThresholdPercent()).thenReturn(80);
+        limiter.activate(config);
+        AtomicInteger cpuLoad = new AtomicInteger(10);
+        SetField.set(limiter, "cpuLoadPercent", (DoubleSupplier) cpuLoad::get);
+
+        ScriptEngine engine = Mockito.mock(ScriptEngine.class);
+        Mockito.when(engine.eval(Matchers.anyString(), Matchers.any(ScriptContext.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                ((FormattingResultLog) ((ScriptContext) invocation.getArguments()[1]).getAttribute("log")).info("executed at {}% CPU", cpuLoad.get());
+                return null;
+            }
+        });
+        ScriptedHealthCheck check = ScriptedHealthCheckTest.check(ScriptedHealthCheckTest.config("check()"), engine);
+        SetField.set(check, "executionLimiter", limiter);
+        assertTrue(check.execute().toString().contains("executed at 10% CPU"));
+
+        cpuLoad.set(95);
+        assertEquals("CPU load 95% is above threshold of 80%", limiter.getOverloadReason());
+        Result degraded = check.execute();
+        assertEquals(Result.Status.WARN, degraded.getStatus());
+        assertTrue(degraded.toString(), degraded.toString().contains("Load shedding: CPU load 95% is above threshold of 80%"));
+        assertTrue(degraded.toString(), degraded.toString().contains("executed at 10% CPU"));
+
+        cpuLoad.set(-1);
+        assertNull("Unknown load does not shed", limiter.getOverloadReason());
+        assertTrue(check.execute().toString().contains("executed at -1% CPU"));
+    }
+
+    @Test
+    public void testSystemCpuLoadAvailable() {
+        double load = ScriptExecutionLimiter.systemCpuLoadPercent();
+        assertTrue(String.valueOf(load), load <= 100 * Runtime.getRuntime().availableProcessors());
+    }
+
+    @Test
+    public void testCheckReturnsLastResultWhenNoSlotAvailable() throws Exception {
+        ScriptExecutionLimiter limiter = limiter(1);
+        ScriptedHealthCheck check = ScriptedHealthCheckTest.check(ScriptedHealthCheckTest.config("log.info('ok')"), null);
+        SetField.set(check, "executionLimiter", limiter);
+        assertTrue(limiter.tryAcquire());
+
+        Result skipped = check.execute();
+        assertEquals(Result.Status.WARN, skipped.getStatus());
+        assertTrue(skipped.toString().contains("Script not executed"));
+
+        FormattingResultLog previousLog = new FormattingResultLog();
+        previousLog.critical("previous failure");
+        SetField.set(check, "lastResult", new Result(previousLog));
+        Result degraded = check.execute();
+        assertEquals(Result.Status.CRITICAL, degraded.getStatus());
+        assertTrue(degraded.toString().contains("(degraded)"));
+        assertTrue(degraded.toString().contains("previous failure"));
+    }
+
+}
@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+import org.apache.felix.hc.api.Result;
+import org.apache.sling.testing.resourceresolver.MockResourceResolverFactory;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import ch.qos.logback.classic.Level;
+
+/**
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class ScriptLibrariesTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ScriptLibraries libraries = new ScriptLibraries();
+    private final ScriptLibraries.Config config = Mockito.mock(ScriptLibraries.Config.class);
+    private final LibraryScriptEngine engine = new LibraryScriptEngine();
+    private final ScriptEngineManager scriptEngineManager = new ScriptEngineManager() {
+        @Override
+        public ScriptEngine getEngineByExtension(String extension) {
+            return "test".equals(extension) ? engine : null;
+        }
+    };
+    private File helpers;
+
+    @Before
+    public void setup() throws Exception {
+        helpers = folder.newFile("helpers.test");
+        Files.write(helpers.toPath(), "threshold formatting".getBytes(StandardCharsets.UTF_8));
+        SetField.set(libraries, "scriptEngineManager", scriptEngineManager);
+        SetField.set(libraries, "resourceResolverFactory", new MockResourceResolverFactory());
+        Mockito.when(config.libraries()).thenReturn(new String[] { helpers.toURI().toString() });
+        Mockito.when(config.checkIntervalSeconds()).thenReturn(0L);
+        libraries.activate(config);
+    }
+
+    @Test
+    public void testCompiledOnceAndRecompiledOnChange() throws Exception {
+        assertEquals(Collections.singletonMap("helpers", "library threshold formatting"), libraries.get(engine).getBindings());
+        assertEquals(Collections.singletonMap("helpers", "library threshold formatting"), libraries.get(engine).getBindings());
+        assertEquals(1, engine.compilations);
+
+        Files.write(helpers.toPath(), "jmx access".getBytes(StandardCharsets.UTF_8));
+        assertEquals(Collections.singletonMap("helpers", "library jmx access"), libraries.get(engine).getBindings());
+        assertEquals(2, engine.compilations);
+    }
+
+    @Test
+    public void testOnlyForEnginesOfSameLanguage() {
+        ScriptEngine otherEngine = Mockito.mock(ScriptEngine.class);
+        ScriptEngineFactory otherFactory = Mockito.mock(ScriptEngineFactory.class);
+        Mockito.when(otherFactory.getLanguageName()).thenReturn("other");
+        Mockito.when(otherFactory.getExtensions()).thenReturn(Arrays.asList("other"));
+        Mockito.when(otherEngine.getFactory()).thenReturn(otherFactory);
+        assertTrue(libraries.get(otherEngine).getBindings().isEmpty());
+        assertEquals(1, libraries.get(engine).getBindings().size());
+    }
+
+    @Test
+    public void testLibraryAvailableToCheck() throws Exception {
+        Files.write(helpers.toPath(), "helper".getBytes(StandardCharsets.UTF_8));
+        ScriptedHealthCheck.Config checkConfig = ScriptedHealthCheckTest.config("log.info(lib.helpers)");
+        Mockito.when(checkConfig.language()).thenReturn("test");
+        ScriptedHealthCheck check = ScriptedHealthCheckTest.check(checkConfig, null);
+        SetField.set(check, "scriptEngineManager", scriptEngineManager);
+        SetField.set(check, "scriptLibraries", libraries);
+        Result result = check.execute();
+        assertEquals(result.toString(), Result.Status.OK, result.getStatus());
+        assertTrue(result.toString(), result.toString().contains("library helper"));
+
+        // a library that cannot be loaded is reported once by the component, the checks run without it
+        Mockito.when(config.libraries()).thenReturn(new String[] { helpers.toURI().toString(), new File(folder.getRoot(), "missing.test").toURI().toString() });
+        try (LogCapture capture = new LogCapture(ScriptLibraries.class.getName(), true)) {
+            libraries.modified(config);
+            result = check.execute();
+            assertEquals(result.toString(), Result.Status.OK, result.getStatus());
+            assertFalse(result.toString(), result.toString().contains("Could not load script library"));
+            assertTrue(result.toString(), result.toString().contains("library helper"));
+            check.execute();
+            capture.assertContains(Level.WARN, "Could not load script library");
+            assertEquals(1, capture.list.stream().filter(event -> event.getFormattedMessage().contains("Could not load script library")).count());
+        }
+    }
+
+    @Test
+    public void testFailingLibraryDoesNotInvalidateLibraries() throws Exception {
+        File missing = new File(folder.getRoot(), "missing.test");
+        Mockito.when(config.libraries()).thenReturn(new String[] { helpers.toURI().toString(), missing.toURI().toString() });
+        libraries.modified(config);
+        ScriptLibraries.Libraries loaded = libraries.get(engine);
+        assertEquals(Collections.singletonMap("helpers", "library threshold formatting"), loaded.getBindings());
+        // checked on every call with an interval of 0, the library still failing leaves the libraries unchanged
+        assertSame(loaded, libraries.get(engine));
+        assertSame(loaded, libraries.get(engine));
+        assertEquals(1, engine.compilations);
+
+        Files.write(missing.toPath(), "added later".getBytes(StandardCharsets.UTF_8));
+        assertEquals("library added later", libraries.get(engine).getBindings().get("missing"));
+
+        assertTrue(missing.delete());
+        assertEquals(Collections.singletonMap("helpers", "library threshold formatting"), libraries.get(engine).getBindings());
+    }
+
+    @Test
+    public void testNotAvailableOnGraalJs() throws Exception {
+        PolyglotScriptEngineProvider provider = new PolyglotScriptEngineProvider();
+        provider.activate();
+        try (LogCapture capture = new LogCapture(ScriptLibraries.class.getName(), true)) {
+            ScriptEngine graalJs = provider.getScriptEngine("js");
+            Assume.assumeNotNull(graalJs);
+            File jsHelpers = folder.newFile("jshelpers.js");
+            Mockito.when(config.libraries()).thenReturn(new String[] { jsHelpers.toURI().toString() });
+            libraries.modified(config);
+            assertTrue(libraries.get(graalJs).getBindings().isEmpty());
+            assertTrue(libraries.get(graalJs).getBindings().isEmpty());
+            capture.assertContains(Level.WARN, "not available to checks running on GraalJS");
+            assertEquals(1, capture.list.stream().filter(event -> event.getFormattedMessage().contains("GraalJS")).count());
+        } finally {
+            provider.deactivate();
+        }
+    }
+
+    /**
+     * Compilable engine of language 'test': a library evaluates to "library " + its source, a check logs the
+     * value of the library 'helpers'.
+     */
+    private static final class LibraryScriptEngine extends AbstractScriptEngine implements Compilable {
+
+        private final ScriptEngineFactory factory = Mockito.mock(ScriptEngineFactory.class);
+        private int compilations;
+
+        LibraryScriptEngine() {
+            Mockito.when(factory.getLanguageName()).thenReturn("test");
+            Mockito.when(factory.getExtensions()).thenReturn(Arrays.asList("test"));
+            Mockito.when(factory.getParameter("THREADING")).thenReturn("MULTITHREADED");
+        }
+
+        @Override
+        public CompiledScript compile(Reader reader) throws ScriptException {
+            try {
+                String source = new ScriptReader(reader).readFully();
+                compilations++;
+                return new CompiledScript() {
+                    @Override
+                    public Object eval(ScriptContext context) {
+                        return LibraryScriptEngine.this.eval(source, context);
+                    }
+
+                    @Override
+                    public ScriptEngine getEngine() {
+                        return LibraryScriptEngine.this;
+                    }
+                };
+            } catch (IOException e) {
+                throw new ScriptException(e);
+            }
+        }
+
+        @Override
+        public CompiledScript compile(String script) throws ScriptException {
+            return compile(new StringReader(script));
+        }
+
+        @Override
+        public Object eval(String script, ScriptContext context) {
+            Object lib = context.getAttribute("lib");
+            if (lib == null) {
+                return "library " + script;
+            }
+            ((FormattingResultLog) context.getAttribute("log")).info(String.valueOf(((Map<?, ?>) lib).get("helpers")));
+            return null;
+        }
+
+        @Override
+        public Object eval(Reader reader, ScriptContext context) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Bindings createBindings() {
+            return new SimpleBindings();
+        }
+
+        @Override
+        public ScriptEngineFactory getFactory() {
+            return factory;
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class ScriptReaderTest {
+
+    @Test
+    public void testLineCountSameAsCountLines() throws IOException {
+        for (String text : new String[] { "", "\n", "one", "one\n", "one\ntwo", "one\n\ntwo\n\n", "\n\none" }) {
+            ScriptReader reader = new ScriptReader(new StringReader(text)).drain();
+            assertEquals("[" + text + "]", ScriptedHealthCheck.countLines(text), reader.getLineCount());
+            assertEquals(text.length(), reader.getLength());
+        }
+    }
+
+    @Test
+    public void testHashIndependentOfReadPattern() throws IOException {
+        String text = "log.info('ok')\n// äöü\n";
+        ScriptReader fullyRead = ScriptReader.open(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(text, fullyRead.readFully());
+
+        ScriptReader partlyRead = new ScriptReader(new StringReader(text));
+        partlyRead.read();
+        partlyRead.skip(5);
+        partlyRead.read(new char[3], 1, 2);
+        partlyRead.drain();
+        assertEquals(fullyRead.getHash(), partlyRead.getHash());
+        assertEquals(2, partlyRead.getLineCount());
+
+        assertNotEquals(fullyRead.getHash(), new ScriptReader(new StringReader(text.replace("ok", "ko"))).drain().getHash());
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+import org.apache.felix.hc.api.Result;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.osgi.framework.Bundle;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Version;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class ScriptUrlLoaderTest {
+
+    private static final String SCRIPT = "log.info('remote')";
+    private static final String ETAG = "\"v1\"";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private String url;
+    private final List<Integer> statusCodes = new ArrayList<>();
+    private BundleContext bundleContext;
+
+    @Before
+    public void setup() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/check.groovy", exchange -> {
+            int status = ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match")) ? 304 : 200;
+            synchronized (statusCodes) {
+                statusCodes.add(status);
+            }
+            exchange.getResponseHeaders().add("ETag", ETAG);
+            if (status == 304) {
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] body = SCRIPT.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream os = exchange.getResponseBody()) {
+                    os.write(body);
+                }
+            }
+            exchange.close();
+        });
+        server.start();
+        url = "http://localhost:" + server.getAddress().getPort() + "/check.groovy";
+
+        bundleContext = mock(BundleContext.class);
+        when(bundleContext.getDataFile(anyString())).thenAnswer(new Answer<File>() {
+            @Override
+            public File answer(InvocationOnMock invocation) {
+                return new File(folder.getRoot(), (String) invocation.getArguments()[0]);
+            }
+        });
+    }
+
+    @After
+    public void teardown() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testConditionalFetch() {
+        ScriptUrlLoader loader = new ScriptUrlLoader(bundleContext, 1000, 1000);
+        assertEquals(SCRIPT, loader.load(url, new FormattingResultLog()));
+        assertEquals(SCRIPT, loader.load(url, new FormattingResultLog()));
+        assertEquals(SCRIPT, loader.load(url, new FormattingResultLog()));
+        assertEquals("[200, 304, 304]", statusCodes.toString());
+    }
+
+    @Test
+    public void testFallbackToLastGoodCopy() {
+        ScriptUrlLoader loader = new ScriptUrlLoader(bundleContext, 1000, 1000);
+        assertEquals(SCRIPT, loader.load(url, new FormattingResultLog()));
+        server.stop(0);
+        server = null;
+
+        FormattingResultLog log = new FormattingResultLog();
+        assertEquals(SCRIPT, loader.load(url, log));
+        assertEquals(Result.Status.OK, new Result(log).getStatus());
+        assertTrue(log.iterator().next().getMessage().contains("using last good copy"));
+
+        // a new loader (e.g. after a restart) uses the local copy in the bundle data area
+        assertEquals(SCRIPT, new ScriptUrlLoader(bundleContext, 1000, 1000).load(url, new FormattingResultLog()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnreachableWithoutCopy() {
+        server.stop(0);
+        server = null;
+        new ScriptUrlLoader(bundleContext, 1000, 1000).load(url, new FormattingResultLog());
+    }
+
+    @Test
+    public void testBundleUrl() throws Exception {
+        File scriptFile = folder.newFile("check.groovy");
+        Files.write(scriptFile.toPath(), SCRIPT.getBytes(StandardCharsets.UTF_8));
+        Bundle bundle = mock(Bundle.class);
+        when(bundle.getSymbolicName()).thenReturn("com.example.checks");
+        when(bundle.getVersion()).thenReturn(Version.parseVersion("1.0.0"));
+        when(bundle.getLastModified()).thenReturn(1L);
+        when(bundle.getEntry("/scripts/check.groovy")).thenReturn(scriptFile.toURI().toURL());
+        when(bundleContext.getBundles()).thenReturn(new Bundle[] { bundle });
+
+        ScriptUrlLoader loader = new ScriptUrlLoader(bundleContext, 1000, 1000);
+        assertEquals(SCRIPT, loader.load("bundle:com.example.checks/scripts/check.groovy", new FormattingResultLog()));
+
+        // unchanged bundle: the entry is not read again
+        when(bundle.getEntry("/scripts/check.groovy")).thenReturn(null);
+        assertEquals(SCRIPT, loader.load("bundle:com.example.checks/scripts/check.groovy", new FormattingResultLog()));
+    }
+
+    @Test
+    public void testIsSupported() {
+        assertTrue(ScriptUrlLoader.isSupported("https://example.com/check.groovy"));
+        assertTrue(ScriptUrlLoader.isSupported("bundle:com.example.checks/check.groovy"));
+        assertFalse(ScriptUrlLoader.isSupported("file:/tmp/check.groovy"));
+    }
+
+}
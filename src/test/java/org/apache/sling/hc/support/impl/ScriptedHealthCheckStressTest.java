@@ -0,0 +1,379 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.Reader;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.LoginException;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptEngineManager;
+import javax.script.SimpleBindings;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+import org.apache.felix.hc.api.HealthCheck;
+import org.apache.felix.hc.api.Result;
+import org.apache.felix.hc.api.ResultLog;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.api.resource.ResourceUtil;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.apache.sling.testing.resourceresolver.MockResourceResolverFactory;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Drives concurrent executions of many check instances and verifies that every result belongs to the check that
+ * produced it. The regular build only runs a short run with a few threads. The benchmark profile (mvn test -Pbenchmark)
+ * runs each scenario with 1..n threads (-Dstress.threads=1,2,4,8,16) for longer (-Dstress.durationMs=5000) and
+ * reports executions per second and latency percentiles per thread count to ${benchmark.output}/stress.json.
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class ScriptedHealthCheckStressTest {
+
+    private static final int CHECKS = 16;
+    private static final String CONTENT_PATH = "/content/stress/check";
+
+    private static final List<String> REPORT = Collections.synchronizedList(new ArrayList<String>());
+
+    private final PolyglotScriptEngineProvider polyglotScriptEngineProvider = new PolyglotScriptEngineProvider();
+    private ResourceResolverFactory repository;
+
+    /** Returns a description of the problem or null if the result is the expected one of check i. */
+    private interface Verifier {
+        String verify(int i, Result result);
+    }
+
+    @Before
+    public void setup() throws Exception {
+        polyglotScriptEngineProvider.activate();
+        repository = new MockResourceResolverFactory();
+        try (ResourceResolver resourceResolver = repository.getServiceResourceResolver(null)) {
+            for (int i = 0; i < CHECKS; i++) {
+                ResourceUtil.getOrCreateResource(resourceResolver, CONTENT_PATH + i,
+                        Collections.<String, Object>singletonMap("marker", "marker-" + i), null, false);
+            }
+            resourceResolver.commit();
+        }
+    }
+
+    @After
+    public void cleanup() {
+        polyglotScriptEngineProvider.deactivate();
+    }
+
+    @AfterClass
+    public static void writeReport() throws Exception {
+        String output = System.getProperty("benchmark.output");
+        if (output == null) {
+            return;
+        }
+        File outputDir = new File(output);
+        if (outputDir.isDirectory() || outputDir.mkdirs()) {
+            String json = "[\n" + String.join(",\n", REPORT) + "\n]\n";
+            Files.write(new File(outputDir, "stress.json").toPath(), json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void testGraalJs() throws Exception {
+        List<HealthCheck> checks = new ArrayList<>();
+        for (int i = 0; i < CHECKS; i++) {
+            ScriptedHealthCheck.Config config = ScriptedHealthCheckTest.config(
+                    "log.info('found ' + resourceResolver.getResource('" + CONTENT_PATH + i + "').getValueMap().get('marker'))");
+            Mockito.when(config.language()).thenReturn("ECMAScript");
+            Mockito.when(config.useGraalJs()).thenReturn(true);
+            ScriptedHealthCheck check = ScriptedHealthCheckTest.check(config, null);
+            SetField.set(check, "polyglotScriptEngineProvider", polyglotScriptEngineProvider);
+            SetField.set(check, "resourceResolverFactory", repository);
+            checks.add(check);
+        }
+        stress("graaljs", checks, markerVerifier());
+    }
+
+    @Test
+    public void testEnginePerExecution() throws Exception {
+        // engines without THREADING parameter are created per execution (groovy declares MULTITHREADED, see testSharedCompiledScript)
+        ScriptEngineManager scriptEngineManager = new ScriptEngineManager() {
+            @Override
+            public ScriptEngine getEngineByExtension(String extension) {
+                return new ResourceMarkerScriptEngine();
+            }
+        };
+        List<HealthCheck> checks = new ArrayList<>();
+        for (int i = 0; i < CHECKS; i++) {
+            ScriptedHealthCheck check = ScriptedHealthCheckTest.check(ScriptedHealthCheckTest.config(CONTENT_PATH + i), null);
+            SetField.set(check, "scriptEngineManager", scriptEngineManager);
+            SetField.set(check, "resourceResolverFactory", repository);
+            checks.add(check);
+        }
+        stress("enginePerExecution", checks, markerVerifier());
+    }
+
+    @Test
+    public void testSharedCompiledScript() throws Exception {
+        // thread-safe Compilable engines (like groovy) compile once, all executions of a check share the CompiledScript
+        CompilableResourceMarkerScriptEngine engine = new CompilableResourceMarkerScriptEngine();
+        ScriptEngineManager scriptEngineManager = new ScriptEngineManager() {
+            @Override
+            public ScriptEngine getEngineByExtension(String extension) {
+                return engine;
+            }
+        };
+        List<HealthCheck> checks = new ArrayList<>();
+        for (int i = 0; i < CHECKS; i++) {
+            ScriptedHealthCheck check = ScriptedHealthCheckTest.check(ScriptedHealthCheckTest.config(CONTENT_PATH + i), null);
+            SetField.set(check, "scriptEngineManager", scriptEngineManager);
+            SetField.set(check, "resourceResolverFactory", repository);
+            checks.add(check);
+        }
+        stress("sharedCompiledScript", checks, markerVerifier());
+        assertEquals(CHECKS, engine.compilations.get());
+    }
+
+    @Test
+    public void testDefaultLogins() throws Exception {
+        SlingRepository slingRepository = (SlingRepository) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { SlingRepository.class }, (proxy, method, args) -> {
+                    if ("login".equals(method.getName()) && args != null && args.length > 0 && args[0] instanceof SimpleCredentials
+                            && "admin".equals(((SimpleCredentials) args[0]).getUserID())) {
+                        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Session.class }, (p, m, a) -> null);
+                    }
+                    throw new LoginException("Login failed");
+                });
+        List<HealthCheck> checks = new ArrayList<>();
+        for (int i = 0; i < CHECKS; i++) {
+            DefaultLoginsHealthCheck check = new DefaultLoginsHealthCheck();
+            // even checks find the admin login enabled
+            SetField.set(check, "logins", Arrays.asList(i % 2 == 0 ? "admin:admin" : "user" + i + ":secret"));
+            SetField.set(check, "repository", slingRepository);
+            checks.add(check);
+        }
+        stress("defaultLogins", checks, (i, result) -> {
+            if (i % 2 == 0) {
+                return result.getStatus() == Result.Status.WARN && result.toString().contains("Login as [admin] succeeded") ? null : result.toString();
+            }
+            return result.isOk() && result.toString().contains("Login as [user" + i + "] failed") ? null : result.toString();
+        });
+    }
+
+    private static Verifier markerVerifier() {
+        return (i, result) -> {
+            List<String> found = new ArrayList<>();
+            for (ResultLog.Entry entry : result) {
+                if (entry.getMessage().startsWith("found ")) {
+                    found.add(entry.getMessage());
+                }
+            }
+            return result.getStatus() == Result.Status.OK && found.equals(Collections.singletonList("found marker-" + i)) ? null : result.toString();
+        };
+    }
+
+    private void stress(String scenario, List<HealthCheck> checks, Verifier verifier) throws Exception {
+        long durationMs = Long.getLong("stress.durationMs", 100);
+        // warm up engines and caches
+        for (int i = 0; i < checks.size(); i++) {
+            String problem = verifier.verify(i, checks.get(i).execute());
+            assertTrue(scenario + " check " + i + ": " + problem, problem == null);
+        }
+        for (String threads : System.getProperty("stress.threads", "4").split(",")) {
+            int threadCount = Integer.parseInt(threads.trim());
+            Queue<String> problems = new ConcurrentLinkedQueue<>();
+            ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+            try {
+                CountDownLatch startSignal = new CountDownLatch(1);
+                List<Future<long[]>> futures = new ArrayList<>();
+                for (int t = 0; t < threadCount; t++) {
+                    int offset = t;
+                    futures.add(executor.submit(() -> {
+                        startSignal.await();
+                        long[] latencies = new long[1024];
+                        int executions = 0;
+                        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMs);
+                        for (long now = System.nanoTime(); now < deadline; executions++) {
+                            int i = (offset + executions) % checks.size();
+                            Result result = checks.get(i).execute();
+                            long end = System.nanoTime();
+                            if (executions == latencies.length) {
+                                latencies = Arrays.copyOf(latencies, executions * 2);
+                            }
+                            latencies[executions] = end - now;
+                            now = end;
+                            String problem = verifier.verify(i, result);
+                            if (problem != null) {
+                                problems.add("check " + i + ": " + problem);
+                            }
+                        }
+                        return Arrays.copyOf(latencies, executions);
+                    }));
+                }
+                long start = System.nanoTime();
+                startSignal.countDown();
+                List<long[]> latencies = new ArrayList<>();
+                for (Future<long[]> future : futures) {
+                    latencies.add(future.get());
+                }
+                report(scenario, threadCount, System.nanoTime() - start, latencies);
+            } finally {
+                executor.shutdownNow();
+            }
+            assertTrue(scenario + " with " + threadCount + " threads: " + problems.size() + " wrong results, first: " + problems.peek(),
+                    problems.isEmpty());
+        }
+    }
+
+    private static void report(String scenario, int threads, long elapsedNanos, List<long[]> threadLatencies) {
+        int executions = 0;
+        for (long[] latencies : threadLatencies) {
+            executions += latencies.length;
+        }
+        long[] all = new long[executions];
+        int pos = 0;
+        for (long[] latencies : threadLatencies) {
+            System.arraycopy(latencies, 0, all, pos, latencies.length);
+            pos += latencies.length;
+        }
+        Arrays.sort(all);
+        String line = String.format("{\"scenario\":\"%s\",\"threads\":%d,\"executions\":%d,\"executionsPerSecond\":%.1f,"
+                + "\"latencyMicros\":{\"p50\":%d,\"p90\":%d,\"p99\":%d,\"max\":%d}}",
+                scenario, threads, executions, executions * 1e9 / elapsedNanos,
+                percentileMicros(all, 50), percentileMicros(all, 90), percentileMicros(all, 99), percentileMicros(all, 100));
+        REPORT.add(line);
+    }
+
+    private static long percentileMicros(long[] sorted, int percentile) {
+        return sorted.length == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(sorted[(sorted.length - 1) * percentile / 100]);
+    }
+
+    /** Logs the marker of the resource whose path is the script. */
+    private static Object logMarker(String path, ScriptContext context) {
+        ResourceResolver resourceResolver = (ResourceResolver) context.getAttribute("resourceResolver");
+        String marker = resourceResolver.getResource(path).getValueMap().get("marker", String.class);
+        ((FormattingResultLog) context.getAttribute("log")).info("found {}", marker);
+        return null;
+    }
+
+    /** Not thread-safe engine (no THREADING parameter), the script is the path of a resource whose marker is logged. */
+    private static final class ResourceMarkerScriptEngine extends AbstractScriptEngine {
+
+        @Override
+        public Object eval(String script, ScriptContext context) {
+            return logMarker(script, context);
+        }
+
+        @Override
+        public Object eval(Reader reader, ScriptContext context) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Bindings createBindings() {
+            return new SimpleBindings();
+        }
+
+        @Override
+        public ScriptEngineFactory getFactory() {
+            return null;
+        }
+    }
+
+    /**
+     * Thread-safe {@link Compilable} engine (THREADING is MULTITHREADED) shared by all checks, the compiled script
+     * only reads the bindings of the context it is evaluated with.
+     */
+    private static final class CompilableResourceMarkerScriptEngine extends AbstractScriptEngine implements Compilable {
+
+        private final AtomicInteger compilations = new AtomicInteger();
+        private final ScriptEngineFactory factory = (ScriptEngineFactory) Proxy.newProxyInstance(ScriptEngineFactory.class.getClassLoader(),
+                new Class<?>[] { ScriptEngineFactory.class },
+                (proxy, method, args) -> "getParameter".equals(method.getName()) && "THREADING".equals(args[0]) ? "MULTITHREADED" : null);
+
+        @Override
+        public CompiledScript compile(String script) {
+            compilations.incrementAndGet();
+            return new CompiledScript() {
+                @Override
+                public Object eval(ScriptContext context) {
+                    return logMarker(script, context);
+                }
+
+                @Override
+                public ScriptEngine getEngine() {
+                    return CompilableResourceMarkerScriptEngine.this;
+                }
+            };
+        }
+
+        @Override
+        public CompiledScript compile(Reader script) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Object eval(String script, ScriptContext context) {
+            throw new UnsupportedOperationException("the compiled script is expected to be used");
+        }
+
+        @Override
+        public Object eval(Reader reader, ScriptContext context) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Bindings createBindings() {
+            return new SimpleBindings();
+        }
+
+        @Override
+        public ScriptEngineFactory getFactory() {
+            return factory;
+        }
+    }
+
+}
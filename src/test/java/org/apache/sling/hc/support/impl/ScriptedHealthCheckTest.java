@@ -17,9 +17,54 @@
  */
 package org.apache.sling.hc.support.impl;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptEngineManager;
+import javax.script.SimpleBindings;
+
+import org.apache.felix.hc.api.FormattingResultLog;
+
+import org.apache.felix.hc.api.Result;
+import org.apache.sling.api.resource.ResourceResolver;
+import org.apache.sling.api.resource.ResourceResolverFactory;
+import org.apache.sling.commons.metrics.Histogram;
+import org.apache.sling.commons.metrics.MetricsService;
+import org.junit.Assume;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Matchers;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.Constants;
 
 import ch.qos.logback.classic.Level;
 
@@ -29,6 +74,46 @@ import ch.qos.logback.classic.Level;
 @Deprecated
 public class ScriptedHealthCheckTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /** Upper bound of bytes allocated by one execution of a trivial script including its result (about 60k before reusing bindings). */
+    private static final long MAX_BYTES_PER_EXECUTION = 8192;
+
+    private static final AtomicInteger PIDS = new AtomicInteger();
+
+    static ScriptedHealthCheck.Config config(String script) {
+        ScriptedHealthCheck.Config config = Mockito.mock(ScriptedHealthCheck.Config.class);
+        Mockito.when(config.hc_name()).thenReturn("test");
+        Mockito.when(config.language()).thenReturn("groovy");
+        Mockito.when(config.script()).thenReturn(script);
+        Mockito.when(config.scriptUrl()).thenReturn("");
+        return config;
+    }
+
+    static ScriptedHealthCheck check(ScriptedHealthCheck.Config config, ScriptEngine engine) throws Exception {
+        return check(config, engine, Mockito.mock(BundleContext.class));
+    }
+
+    static ScriptedHealthCheck check(ScriptedHealthCheck.Config config, ScriptEngine engine, BundleContext bundleContext) throws Exception {
+        return check(config, engine, bundleContext, "org.apache.sling.hc.support.ScriptedHealthCheck." + PIDS.incrementAndGet());
+    }
+
+    static ScriptedHealthCheck check(ScriptedHealthCheck.Config config, ScriptEngine engine, BundleContext bundleContext, String pid) throws Exception {
+        final ScriptedHealthCheck c = new ScriptedHealthCheck();
+        ScriptEngineManager scriptEngineManager = Mockito.mock(ScriptEngineManager.class);
+        Mockito.when(scriptEngineManager.getEngineByExtension("groovy")).thenReturn(engine);
+        SetField.set(c, "scriptEngineManager", scriptEngineManager);
+        ResourceResolverFactory resourceResolverFactory = Mockito.mock(ResourceResolverFactory.class);
+        Mockito.when(resourceResolverFactory.getServiceResourceResolver(null)).thenReturn(Mockito.mock(ResourceResolver.class));
+        SetField.set(c, "resourceResolverFactory", resourceResolverFactory);
+        SetField.set(c, "executionLimiter", ScriptExecutionLimiterTest.limiter(0));
+        SetField.set(c, "scriptLibraries", new ScriptLibraries());
+        SetField.set(c, "polyglotScriptEngineProvider", new PolyglotScriptEngineProvider());
+        c.activate(bundleContext, config, Collections.<String, Object>singletonMap(Constants.SERVICE_PID, pid));
+        return c;
+    }
+
     @Test
     public void testHealthCheckDeprecatedWarning() throws Exception {
         final ScriptedHealthCheck c = new ScriptedHealthCheck();
@@ -38,7 +123,7 @@ public class ScriptedHealthCheckTest {
         BundleContext bc = Mockito.mock(BundleContext.class);
         try (LogCapture capture = new LogCapture("org.apache.sling.hc.support.impl.ScriptedHealthCheck", true)) {
             // this should log a deprecation warning
-            c.activate(bc, config);
+            c.activate(bc, config, Collections.<String, Object>emptyMap());
 
             // verify the warning was logged
             capture.assertContains(Level.WARN, "This is deprecated. Please use the use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead.");
@@ -46,4 +131,313 @@ public class ScriptedHealthCheckTest {
 
     }
 
+    @Test
+    public void testAllocationBudget() throws Exception {
+        ScriptEngine engine = Mockito.mock(ScriptEngine.class);
+        Mockito.when(engine.eval(Matchers.anyString(), Matchers.any(ScriptContext.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                return new byte[1024 * 1024].length;
+            }
+        });
+
+        ScriptedHealthCheck.Config config = config("allocate");
+        Mockito.when(config.allocationBudgetBytes()).thenReturn(1024L);
+        Mockito.when(config.logDebugEntries()).thenReturn(true);
+        Result result = check(config, engine).execute();
+        assertEquals(Result.Status.WARN, result.getStatus());
+        assertTrue(result.toString(), result.toString().contains("above budget"));
+        assertTrue(result.toString(), result.toString().contains("Script execution cpu time"));
+
+        Mockito.when(config.allocationBudgetBytes()).thenReturn(0L);
+        assertEquals(Result.Status.OK, check(config, engine).execute().getStatus());
+    }
+
+    @Test
+    public void testScriptReturningResultOfLog() throws Exception {
+        ScriptEngine engine = Mockito.mock(ScriptEngine.class);
+        Mockito.when(engine.eval(Matchers.anyString(), Matchers.any(ScriptContext.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                FormattingResultLog log = (FormattingResultLog) ((ScriptContext) invocation.getArguments()[1]).getAttribute("log");
+                log.info("checked");
+                log.warn("disk almost full");
+                return new Result(log);
+            }
+        });
+        ScriptedHealthCheck check = check(config("return new Result(log)"), engine);
+        for (int i = 0; i < 2; i++) {
+            Result result = check.execute();
+            assertEquals(result.toString(), Result.Status.WARN, result.getStatus());
+            assertTrue(result.toString(), result.toString().contains("disk almost full"));
+            assertFalse(result.toString(), result.toString().contains("(x2)"));
+        }
+    }
+
+    @Test
+    public void testBindingsResetBetweenExecutions() throws Exception {
+        List<Set<String>> seenBindings = new ArrayList<>();
+        ScriptEngine engine = Mockito.mock(ScriptEngine.class);
+        Mockito.when(engine.eval(Matchers.anyString(), Matchers.any(ScriptContext.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                Bindings bindings = ((ScriptContext) invocation.getArguments()[1]).getBindings(ScriptContext.ENGINE_SCOPE);
+                seenBindings.add(new HashSet<>(bindings.keySet()));
+                // a script removing a standard binding and defining a variable keeps the number of bindings unchanged
+                bindings.remove("osgi");
+                bindings.put("counter", seenBindings.size());
+                return null;
+            }
+        });
+        ScriptedHealthCheck check = check(config("osgi = undefined; var counter = 1"), engine);
+        check.execute();
+        check.execute();
+        assertEquals(2, seenBindings.size());
+        assertEquals(seenBindings.get(0), seenBindings.get(1));
+        assertTrue(seenBindings.get(1).contains("osgi"));
+        assertFalse(seenBindings.get(1).contains("counter"));
+    }
+
+    @Test
+    public void testPersistentCacheKeyedByPid() throws Exception {
+        ScriptEngine engine = Mockito.mock(ScriptEngine.class);
+        Mockito.when(engine.eval(Matchers.anyString(), Matchers.any(ScriptContext.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                String script = (String) invocation.getArguments()[0];
+                ScriptContext context = (ScriptContext) invocation.getArguments()[1];
+                ScriptCache cache = (ScriptCache) context.getAttribute("cache");
+                if (script.startsWith("put ")) {
+                    cache.put("value", script.substring(4));
+                } else {
+                    ((FormattingResultLog) context.getAttribute("log")).info("cached {}", cache.get("value"));
+                }
+                return null;
+            }
+        });
+        BundleContext bundleContext = Mockito.mock(BundleContext.class);
+        Mockito.when(bundleContext.getDataFile(Matchers.anyString())).thenAnswer(new Answer<File>() {
+            @Override
+            public File answer(InvocationOnMock invocation) {
+                return new File(folder.getRoot(), (String) invocation.getArguments()[0]);
+            }
+        });
+        // both checks have the default name
+        for (String pid : Arrays.asList("org.apache.sling.hc.support.ScriptedHealthCheck~one", "org.apache.sling.hc.support.ScriptedHealthCheck~two")) {
+            ScriptedHealthCheck.Config config = config("put " + pid);
+            Mockito.when(config.hc_name()).thenReturn("Scripted Health Check");
+            Mockito.when(config.cachePersistent()).thenReturn(true);
+            Mockito.when(config.cacheMaxEntries()).thenReturn(10);
+            ScriptedHealthCheck check = check(config, engine, bundleContext, pid);
+            check.execute();
+            check.deactivate();
+        }
+        for (String pid : Arrays.asList("org.apache.sling.hc.support.ScriptedHealthCheck~one", "org.apache.sling.hc.support.ScriptedHealthCheck~two")) {
+            ScriptedHealthCheck.Config config = config("read");
+            Mockito.when(config.hc_name()).thenReturn("Scripted Health Check");
+            Mockito.when(config.cachePersistent()).thenReturn(true);
+            Mockito.when(config.cacheMaxEntries()).thenReturn(10);
+            Result result = check(config, engine, bundleContext, pid).execute();
+            assertTrue(result.toString(), result.toString().contains("cached " + pid));
+        }
+    }
+
+    @Test
+    public void testMetricsPublishedOnlyIfAvailable() throws Exception {
+        ScriptEngine engine = Mockito.mock(ScriptEngine.class);
+        ScriptedHealthCheck check = check(config("log.info('ok')"), engine);
+        assertEquals(Result.Status.OK, check.execute().getStatus());
+
+        MetricsService metricsService = Mockito.mock(MetricsService.class);
+        Histogram histogram = Mockito.mock(Histogram.class);
+        Mockito.when(metricsService.histogram(Matchers.anyString())).thenReturn(histogram);
+        ScriptMetrics scriptMetrics = new ScriptMetrics();
+        SetField.set(scriptMetrics, "metricsService", metricsService);
+        SetField.set(check, "scriptMetrics", scriptMetrics);
+        assertEquals(Result.Status.OK, check.execute().getStatus());
+        Mockito.verify(metricsService).histogram("hc.scripted.test.cpuTimeNanos");
+        Mockito.verify(histogram, Mockito.atLeastOnce()).update(Matchers.anyLong());
+    }
+
+    @Test
+    public void testModifiedRecompilesOnlyOnScriptChange() throws Exception {
+        ScriptEngine engine = Mockito.mock(ScriptEngine.class, Mockito.withSettings().extraInterfaces(Compilable.class));
+        ScriptEngineFactory factory = Mockito.mock(ScriptEngineFactory.class);
+        Mockito.when(factory.getParameter("THREADING")).thenReturn("MULTITHREADED");
+        Mockito.when(engine.getFactory()).thenReturn(factory);
+        CompiledScript compiledScript = Mockito.mock(CompiledScript.class);
+        Mockito.when(((Compilable) engine).compile(Matchers.anyString())).thenReturn(compiledScript);
+
+        ScriptedHealthCheck.Config config = config("log.info('ok')");
+        ScriptedHealthCheck check = check(config, engine);
+        assertEquals(Result.Status.OK, check.execute().getStatus());
+        assertEquals(Result.Status.OK, check.execute().getStatus());
+
+        Mockito.when(config.hc_tags()).thenReturn(new String[] { "changed" });
+        Mockito.when(config.queryMaxResults()).thenReturn(10);
+        check.modified(config);
+        assertEquals(Result.Status.OK, check.execute().getStatus());
+        Mockito.verify((Compilable) engine, Mockito.times(1)).compile("log.info('ok')");
+        Mockito.verify(compiledScript, Mockito.times(3)).eval(Matchers.any(ScriptContext.class));
+
+        Mockito.when(config.script()).thenReturn("log.info('changed')");
+        check.modified(config);
+        assertEquals(Result.Status.OK, check.execute().getStatus());
+        Mockito.verify((Compilable) engine, Mockito.times(1)).compile("log.info('changed')");
+        Mockito.verify(engine, Mockito.never()).eval(Matchers.anyString(), Matchers.any(ScriptContext.class));
+    }
+
+    @Test
+    public void testFileScriptStreamedIntoCompile() throws Exception {
+        List<String> compiledSources = new ArrayList<>();
+        ScriptEngine engine = Mockito.mock(ScriptEngine.class, Mockito.withSettings().extraInterfaces(Compilable.class));
+        ScriptEngineFactory factory = Mockito.mock(ScriptEngineFactory.class);
+        Mockito.when(factory.getParameter("THREADING")).thenReturn("MULTITHREADED");
+        Mockito.when(engine.getFactory()).thenReturn(factory);
+        Mockito.when(((Compilable) engine).compile(Matchers.any(Reader.class))).thenAnswer(new Answer<CompiledScript>() {
+            @Override
+            public CompiledScript answer(InvocationOnMock invocation) throws IOException {
+                // engines may stop reading before the end, e.g. after a syntax error
+                Reader reader = (Reader) invocation.getArguments()[0];
+                char[] buffer = new char[4];
+                compiledSources.add(new String(buffer, 0, reader.read(buffer)));
+                return Mockito.mock(CompiledScript.class);
+            }
+        });
+        File scriptFile = folder.newFile("check.groovy");
+        Files.write(scriptFile.toPath(), "one\ntwo\n".getBytes(StandardCharsets.UTF_8));
+
+        ScriptedHealthCheck.Config config = config("");
+        Mockito.when(config.scriptUrl()).thenReturn(scriptFile.toURI().toString());
+        ScriptedHealthCheck check = check(config, engine);
+        Result result = check.execute();
+        assertEquals(Result.Status.OK, result.getStatus());
+        assertTrue(result.toString(), result.toString().contains("(2 lines)"));
+        assertEquals(Result.Status.OK, check.execute().getStatus());
+        assertEquals(Arrays.asList("one\n"), compiledSources);
+
+        Files.write(scriptFile.toPath(), "three\n".getBytes(StandardCharsets.UTF_8));
+        result = check.execute();
+        assertTrue(result.toString(), result.toString().contains("(1 lines)"));
+        assertEquals(Arrays.asList("one\n", "thre"), compiledSources);
+        Mockito.verify(engine, Mockito.never()).eval(Matchers.anyString(), Matchers.any(ScriptContext.class));
+    }
+
+    @Test
+    public void testFileScriptEvaluatedFromReader() throws Exception {
+        ScriptEngine engine = Mockito.mock(ScriptEngine.class);
+        ScriptEngineFactory factory = Mockito.mock(ScriptEngineFactory.class);
+        Mockito.when(factory.getParameter("THREADING")).thenReturn("MULTITHREADED");
+        Mockito.when(engine.getFactory()).thenReturn(factory);
+        Mockito.when(engine.eval(Matchers.any(Reader.class), Matchers.any(ScriptContext.class))).thenAnswer(new Answer<Object>() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws IOException {
+                Reader reader = (Reader) invocation.getArguments()[0];
+                char[] buffer = new char[16];
+                String script = new String(buffer, 0, reader.read(buffer));
+                ((FormattingResultLog) ((ScriptContext) invocation.getArguments()[1]).getAttribute("log")).info("evaluated {}", script.trim());
+                return null;
+            }
+        });
+        File scriptFile = folder.newFile("check.test");
+        Files.write(scriptFile.toPath(), "one\n".getBytes(StandardCharsets.UTF_8));
+
+        ScriptedHealthCheck.Config config = config("");
+        Mockito.when(config.scriptUrl()).thenReturn(scriptFile.toURI().toString());
+        ScriptedHealthCheck check = check(config, engine);
+        assertTrue(check.execute().toString().contains("evaluated one"));
+        Files.write(scriptFile.toPath(), "two\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(check.execute().toString().contains("evaluated two"));
+        Mockito.verify(engine, Mockito.never()).eval(Matchers.anyString(), Matchers.any(ScriptContext.class));
+    }
+
+    @Test
+    public void testUnchangedSourceVersionNotRead() throws Exception {
+        List<String> compiledSources = new ArrayList<>();
+        ScriptEngine engine = Mockito.mock(ScriptEngine.class, Mockito.withSettings().extraInterfaces(Compilable.class));
+        ScriptEngineFactory factory = Mockito.mock(ScriptEngineFactory.class);
+        Mockito.when(factory.getParameter("THREADING")).thenReturn("MULTITHREADED");
+        Mockito.when(engine.getFactory()).thenReturn(factory);
+        Mockito.when(((Compilable) engine).compile(Matchers.any(Reader.class))).thenAnswer(new Answer<CompiledScript>() {
+            @Override
+            public CompiledScript answer(InvocationOnMock invocation) throws IOException {
+                char[] buffer = new char[16];
+                compiledSources.add(new String(buffer, 0, ((Reader) invocation.getArguments()[0]).read(buffer)));
+                return Mockito.mock(CompiledScript.class);
+            }
+        });
+        File scriptFile = folder.newFile("check.groovy");
+        Path path = scriptFile.toPath();
+        FileTime lastModified = FileTime.fromMillis(System.currentTimeMillis() - 60000);
+        Files.write(path, "one\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(path, lastModified);
+
+        ScriptedHealthCheck.Config config = config("");
+        Mockito.when(config.scriptUrl()).thenReturn(scriptFile.toURI().toString());
+        ScriptedHealthCheck check = check(config, engine);
+        check.execute();
+        // same size and modification time: the source is not read again
+        Files.write(path, "two\n".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(path, lastModified);
+        assertEquals(Result.Status.OK, check.execute().getStatus());
+        assertEquals(Arrays.asList("one\n"), compiledSources);
+
+        Files.setLastModifiedTime(path, FileTime.fromMillis(lastModified.toMillis() + 1000));
+        assertEquals(Result.Status.OK, check.execute().getStatus());
+        assertEquals(Arrays.asList("one\n", "two\n"), compiledSources);
+
+        // a recent modification is not relied on, the source is hashed to detect changes
+        Files.write(path, "six\n".getBytes(StandardCharsets.UTF_8));
+        assertNull(ScriptedHealthCheck.sourceVersion(scriptFile.toURI().toString(), null));
+        assertEquals(Result.Status.OK, check.execute().getStatus());
+        assertEquals(Arrays.asList("one\n", "two\n", "six\n"), compiledSources);
+    }
+
+    @Test
+    public void testSteadyStateAllocation() throws Exception {
+        Assume.assumeTrue(ScriptResourceUsage.currentThreadAllocatedBytes() >= 0);
+        ScriptEngineFactory factory = Mockito.mock(ScriptEngineFactory.class);
+        Mockito.when(factory.getParameter("THREADING")).thenReturn("MULTITHREADED");
+        ScriptEngine engine = new AbstractScriptEngine() {
+            @Override
+            public Object eval(String script, ScriptContext context) {
+                ((FormattingResultLog) context.getAttribute("log")).info("ok");
+                return null;
+            }
+
+            @Override
+            public Object eval(Reader reader, ScriptContext context) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Bindings createBindings() {
+                return new SimpleBindings();
+            }
+
+            @Override
+            public ScriptEngineFactory getFactory() {
+                return factory;
+            }
+        };
+        ScriptedHealthCheck check = check(config("log.info('ok')"), engine);
+        // Mockito records invocations, a plain stub keeps the factory out of the measurement
+        ResourceResolver resourceResolver = (ResourceResolver) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { ResourceResolver.class }, (proxy, method, args) -> null);
+        SetField.set(check, "resourceResolverFactory", Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { ResourceResolverFactory.class }, (proxy, method, args) -> resourceResolver));
+
+        int executions = 2000;
+        for (int i = 0; i < executions; i++) {
+            check.execute();
+        }
+        long start = ScriptResourceUsage.currentThreadAllocatedBytes();
+        for (int i = 0; i < executions; i++) {
+            check.execute();
+        }
+        long bytesPerExecution = (ScriptResourceUsage.currentThreadAllocatedBytes() - start) / executions;
+        assertTrue("Allocated " + bytesPerExecution + " bytes per execution", bytesPerExecution <= MAX_BYTES_PER_EXECUTION);
+        assertEquals(Result.Status.OK, check.execute().getStatus());
+    }
+
 }
@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The SF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.apache.sling.hc.support.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@Deprecated
+public class SlowScriptSamplerTest {
+
+    private final SlowScriptSampler sampler = new SlowScriptSampler();
+
+    @Before
+    public void setup() {
+        sampler.activate();
+    }
+
+    @After
+    public void cleanup() {
+        sampler.deactivate();
+    }
+
+    @Test
+    public void testSamplesSlowExecution() throws Exception {
+        SlowScriptSampler.Sampling sampling = sampler.start(10, 5);
+        Thread.sleep(200);
+        String summary = sampling.stop();
+        assertNotNull(summary);
+        assertTrue(summary, summary.contains("stack samples, top frames: java.lang.Thread.sleep"));
+    }
+
+    @Test
+    public void testFastExecutionIsNotSampled() {
+        SlowScriptSampler.Sampling sampling = sampler.start(10000, 5);
+        assertNull(sampling.stop());
+    }
+
+    @Test
+    public void testStoppedSamplingsAreNotQueued() {
+        for (int i = 0; i < 1000; i++) {
+            assertNull(sampler.start(60000, 5).stop());
+        }
+        assertEquals(0, sampler.getQueuedSamplings());
+    }
+
+    @Test
+    public void testScriptFrame() {
+        assertTrue(SlowScriptSampler.isScriptFrame(new StackTraceElement("Script1", "run", "Script1.groovy", 12)));
+        assertFalse(SlowScriptSampler.isScriptFrame(new StackTraceElement("java.lang.Thread", "sleep", "Thread.java", 340)));
+        assertFalse(SlowScriptSampler.isScriptFrame(new StackTraceElement("java.lang.Thread", "sleep", null, -2)));
+    }
+
+}
@@ -108,6 +108,12 @@ public class ScriptedHealthCheckIT extends HCSupportTestSupport {
                 .put("script", "")
                 .put("scriptUrl", "jcr:/content/not_valid.groovy")
                 .asOption(),
+            factoryConfiguration("org.apache.sling.hc.support.ScriptedHealthCheck")
+                .put("hc.name", "Scripted Heath Check Test5 (expression)")
+                .put("hc.tags", new String[] {"expression_scriptedtest"})
+                .put("language", "expression")
+                .put("script", "service('org.apache.felix.hc.api.execution.HealthCheckExecutor') && resource('/content') && jmx('java.lang:type=Threading', 'ThreadCount') > 0")
+                .asOption(),
             factoryConfiguration("org.apache.sling.hc.support.ScriptedHealthCheck")
                 .put("hc.name", "Scripted Heath Check Test4")
                 .put("hc.tags", new String[] {"ecmascript_scriptedtest"})
@@ -127,6 +133,11 @@ public class ScriptedHealthCheckIT extends HCSupportTestSupport {
         assertTrue(waitForHealthCheck("ecmascript_scriptedtest", Duration.ofSeconds(30), Duration.ofMillis(100)));
     }
 
+    @Test
+    public void testExpressionScriptedHealthCheck() throws Exception {
+        assertTrue(waitForHealthCheck("expression_scriptedtest", Duration.ofSeconds(30), Duration.ofMillis(100)));
+    }
+
     @Test
     public void testFileScriptedUrlHealthCheck() throws Exception {
         assertTrue(waitForHealthCheck("scriptedurltest", Duration.ofSeconds(30), Duration.ofMillis(100)));
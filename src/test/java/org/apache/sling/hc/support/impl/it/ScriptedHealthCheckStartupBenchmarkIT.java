@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.sling.hc.support.impl.it;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.ops4j.pax.exam.CoreOptions.mavenBundle;
+import static org.ops4j.pax.exam.CoreOptions.options;
+import static org.ops4j.pax.exam.CoreOptions.systemProperty;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Dictionary;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+import javax.jcr.Binary;
+import javax.jcr.Node;
+import javax.jcr.Session;
+import javax.jcr.SimpleCredentials;
+
+import org.apache.felix.hc.api.HealthCheck;
+import org.apache.felix.hc.api.Result;
+import org.apache.felix.hc.api.execution.HealthCheckExecutionOptions;
+import org.apache.felix.hc.api.execution.HealthCheckExecutionResult;
+import org.apache.felix.hc.api.execution.HealthCheckSelector;
+import org.apache.sling.jcr.api.SlingRepository;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.ops4j.pax.exam.Configuration;
+import org.ops4j.pax.exam.Option;
+import org.ops4j.pax.exam.junit.PaxExam;
+import org.ops4j.pax.exam.spi.reactors.ExamReactorStrategy;
+import org.ops4j.pax.exam.spi.reactors.PerClass;
+import org.ops4j.pax.exam.util.PathUtils;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceReference;
+import org.osgi.util.tracker.ServiceTracker;
+
+/**
+ * Startup-scale benchmark: creates a large number of health check configurations (inline, file: and jcr: scripts
+ * plus default logins checks, as deployed on real instances) and measures the time until all health check services
+ * are registered, the time to the first OK result of each check (including the delayed component activation) and
+ * the peak heap and metaspace usage. The figures are written as JSON to ${benchmark.output}/startup.json for
+ * tracking regressions.
+ *
+ * Not part of the regular build, run with <code>mvn verify -Pbenchmark [-Dbenchmark.checks=300]</code>.
+ *
+ * @deprecated for SLING-11445 -  use the equivalent functionality from the org.apache.felix.healthcheck.generalchecks bundle instead
+ */
+@RunWith(PaxExam.class)
+@ExamReactorStrategy(PerClass.class)
+@Deprecated
+public class ScriptedHealthCheckStartupBenchmarkIT extends HCSupportTestSupport {
+
+    private static final String TAG = "startupbenchmark";
+    private static final String JCR_SCRIPT_PATH = "/content/startupbenchmark.groovy";
+
+    private static final String[] KINDS = { "inline", "file", "jcr", "logins" };
+
+    @Inject
+    protected SlingRepository repository;
+
+    @Inject
+    protected BundleContext bundleContext;
+
+    @Configuration
+    public Option[] configuration() throws IOException {
+        return options(
+            baseConfiguration(),
+            mavenBundle().groupId("org.apache.groovy").artifactId("groovy").version("4.0.3"),
+            mavenBundle().groupId("org.apache.groovy").artifactId("groovy-jsr223").version("4.0.3"),
+            // evaluated in the test driver, forwarded to the container
+            systemProperty("benchmark.checks").value(System.getProperty("benchmark.checks", "300")),
+            systemProperty("benchmark.timeoutSeconds").value(System.getProperty("benchmark.timeoutSeconds", "600")),
+            systemProperty("benchmark.output").value(System.getProperty("benchmark.output",
+                    String.format("%s/target/benchmark", PathUtils.getBaseDir()))),
+            systemProperty("benchmark.fileScriptUrl").value(Paths.get(String.format("%s/target/test-classes/test-content/test2.groovy",
+                    PathUtils.getBaseDir())).toUri().toString())
+        );
+    }
+
+    @Test
+    public void testStartupWithManyChecks() throws Exception {
+        int checks = Integer.getInteger("benchmark.checks", 300);
+        long timeoutMs = TimeUnit.SECONDS.toMillis(Integer.getInteger("benchmark.timeoutSeconds", 600));
+        publishJcrScript();
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+        Map<String, Long> registrationTimes = new ConcurrentHashMap<>();
+        ServiceTracker<HealthCheck, HealthCheck> tracker = new ServiceTracker<HealthCheck, HealthCheck>(bundleContext,
+                bundleContext.createFilter("(&(objectClass=" + HealthCheck.class.getName() + ")(hc.tags=" + TAG + "))"), null) {
+            @Override
+            public HealthCheck addingService(ServiceReference<HealthCheck> reference) {
+                registrationTimes.putIfAbsent(String.valueOf(reference.getProperty("hc.name")), System.nanoTime());
+                return super.addingService(reference);
+            }
+        };
+        tracker.open();
+
+        long start = System.nanoTime();
+        Map<String, String> kinds = new HashMap<>();
+        List<org.osgi.service.cm.Configuration> configurations = new ArrayList<>();
+        for (int i = 0; i < checks; i++) {
+            String kind = KINDS[i % KINDS.length];
+            String name = "Startup benchmark " + i + " (" + kind + ")";
+            kinds.put(name, kind);
+            configurations.add(createConfiguration(name, kind, i));
+        }
+        long configured = System.nanoTime();
+
+        Map<String, Long> firstOkTimes = waitForFirstOkResults(kinds.keySet(), timeoutMs);
+        long allOk = System.nanoTime();
+        tracker.close();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("checks", checks);
+        report.put("configurationMs", millis(configured - start));
+        report.put("registrationMs", millis(max(registrationTimes.values()) - start));
+        report.put("timeToAllOkMs", millis(allOk - start));
+        report.put("firstOkMs", percentiles(firstOkTimes.values(), start));
+        report.put("firstOkMsByKind", percentilesByKind(firstOkTimes, kinds, start));
+        report.put("heapPeakBytes", peakUsage(MemoryType.HEAP, null));
+        report.put("metaspacePeakBytes", peakUsage(MemoryType.NON_HEAP, "Metaspace"));
+        writeReport(report);
+
+        for (org.osgi.service.cm.Configuration configuration : configurations) {
+            configuration.delete();
+        }
+        assertEquals("Registered checks", checks, registrationTimes.size());
+        assertEquals("Checks with OK result", checks, firstOkTimes.size());
+    }
+
+    private org.osgi.service.cm.Configuration createConfiguration(String name, String kind, int index) throws IOException {
+        boolean logins = "logins".equals(kind);
+        org.osgi.service.cm.Configuration configuration = configurationAdmin.getFactoryConfiguration(
+                logins ? "org.apache.sling.hc.support.DefaultLoginsHealthCheck" : "org.apache.sling.hc.support.ScriptedHealthCheck", "benchmark" + index, null);
+        Dictionary<String, Object> properties = new Hashtable<>();
+        properties.put("hc.name", name);
+        properties.put("hc.tags", new String[] { TAG });
+        if (logins) {
+            properties.put("logins", new String[] { "admin:not-the-admin-password" });
+        } else {
+            properties.put("language", "groovy");
+            properties.put("script", "inline".equals(kind) ? "log.info('check " + index + " ok')" : "");
+            properties.put("scriptUrl", "file".equals(kind) ? System.getProperty("benchmark.fileScriptUrl")
+                    : "jcr".equals(kind) ? "jcr:" + JCR_SCRIPT_PATH : "");
+        }
+        configuration.update(properties);
+        return configuration;
+    }
+
+    private void publishJcrScript() throws Exception {
+        Session jcrSession = repository.login(new SimpleCredentials("admin", "admin".toCharArray()));
+        try {
+            Node fileNode = jcrSession.getNode("/content").addNode(JCR_SCRIPT_PATH.substring("/content/".length()), "nt:file");
+            Node contentNode = fileNode.addNode("jcr:content", "nt:resource");
+            Binary dataBinary = jcrSession.getValueFactory().createBinary(getClass().getResourceAsStream("/test-content/test2.groovy"));
+            contentNode.setProperty("jcr:data", dataBinary);
+            contentNode.setProperty("jcr:mimeType", "application/x-groovy");
+            jcrSession.save();
+        } finally {
+            jcrSession.logout();
+        }
+    }
+
+    /** Executes all not yet OK checks until each one returned OK once, returns the time of the first OK result per check. */
+    private Map<String, Long> waitForFirstOkResults(Set<String> names, long timeoutMs) throws InterruptedException {
+        Map<String, Long> firstOkTimes = new HashMap<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        HealthCheckExecutionOptions executionOptions = new HealthCheckExecutionOptions().setForceInstantExecution(true)
+                .setOverrideGlobalTimeout((int) timeoutMs);
+        while (firstOkTimes.size() < names.size() && System.nanoTime() < deadline) {
+            for (HealthCheckExecutionResult result : hcExecutor.execute(HealthCheckSelector.tags(TAG), executionOptions)) {
+                String name = result.getHealthCheckMetadata().getName();
+                if (result.getHealthCheckResult().getStatus() == Result.Status.OK && names.contains(name)) {
+                    firstOkTimes.putIfAbsent(name, System.nanoTime());
+                }
+            }
+            Thread.sleep(100);
+        }
+        return firstOkTimes;
+    }
+
+    private static long peakUsage(MemoryType type, String poolName) {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == type && (poolName == null || poolName.equals(pool.getName())) && pool.getPeakUsage() != null) {
+                // sum of the peaks of all pools, an upper bound of the actual peak
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static Map<String, Object> percentilesByKind(Map<String, Long> times, Map<String, String> kinds, long start) {
+        Map<String, Object> byKind = new LinkedHashMap<>();
+        for (String kind : KINDS) {
+            List<Long> kindTimes = new ArrayList<>();
+            for (Map.Entry<String, Long> time : times.entrySet()) {
+                if (kind.equals(kinds.get(time.getKey()))) {
+                    kindTimes.add(time.getValue());
+                }
+            }
+            byKind.put(kind, percentiles(kindTimes, start));
+        }
+        return byKind;
+    }
+
+    private static Map<String, Object> percentiles(Collection<Long> times, long start) {
+        List<Long> sorted = new ArrayList<>(times);
+        Collections.sort(sorted);
+        Map<String, Object> percentiles = new LinkedHashMap<>();
+        percentiles.put("count", sorted.size());
+        if (!sorted.isEmpty()) {
+            for (int percentile : Arrays.asList(50, 90, 99)) {
+                percentiles.put("p" + percentile, millis(sorted.get((sorted.size() - 1) * percentile / 100) - start));
+            }
+            percentiles.put("max", millis(sorted.get(sorted.size() - 1) - start));
+        }
+        return percentiles;
+    }
+
+    private static long max(Collection<Long> values) {
+        return values.isEmpty() ? 0 : Collections.max(values);
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static void writeReport(Map<String, Object> report) throws IOException {
+        File outputDir = new File(System.getProperty("benchmark.output"));
+        assertTrue("Could not create " + outputDir, outputDir.isDirectory() || outputDir.mkdirs());
+        StringBuilder json = new StringBuilder();
+        appendJson(json, report);
+        Files.write(new File(outputDir, "startup.json").toPath(), json.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void appendJson(StringBuilder json, Object value) {
+        if (value instanceof Map) {
+            json.append('{');
+            String separator = "";
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                json.append(separator).append('"').append(entry.getKey()).append("\":");
+                appendJson(json, entry.getValue());
+                separator = ",";
+            }
+            json.append('}');
+        } else {
+            json.append(value);
+        }
+    }
+
+}